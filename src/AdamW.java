@@ -0,0 +1,111 @@
+import java.util.*;
+
+public class AdamW {
+    private final List<Matrix> params;
+    private final double[][][] firstMoment; // preallocated per parameter
+    private final double[][][] secondMoment;
+    private final double learningRate;
+    private final double beta1;
+    private final double beta2;
+    private final double eps;
+    private final double[] weightDecay; // per parameter
+    private int stepCount;
+    private double biasCorrection1;
+    private double biasCorrection2;
+
+    public AdamW(List<Matrix> params, double learningRate, double beta1, double beta2, double eps, double weightDecay) {
+        this.params = new ArrayList<>(params);
+        this.learningRate = learningRate;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.eps = eps;
+        this.weightDecay = new double[this.params.size()];
+        this.firstMoment = new double[this.params.size()][][];
+        this.secondMoment = new double[this.params.size()][][];
+        for (int p = 0; p < this.params.size(); p++) {
+            Matrix param = this.params.get(p);
+            firstMoment[p] = new double[param.getRows()][param.getCols()];
+            secondMoment[p] = new double[param.getRows()][param.getCols()];
+            param.getGrad(); // allocate gradient buffers up front
+            // Single-row parameters (LayerNorm scale/shift) are gains and offsets, not weights: no decay by default
+            this.weightDecay[p] = param.getRows() == 1 ? 0.0 : weightDecay;
+        }
+    }
+
+    public AdamW(List<Matrix> params, double learningRate) {
+        this(params, learningRate, 0.9, 0.999, 1e-8, 0.01);
+    }
+
+    // Overrides the decoupled weight decay of one parameter
+    public void setWeightDecay(Matrix param, double weightDecay) {
+        int index = params.indexOf(param);
+        if (index < 0) {
+            throw new IllegalArgumentException("Parameter is not managed by this optimizer.");
+        }
+        this.weightDecay[index] = weightDecay;
+    }
+
+    // Updates every parameter in place from its accumulated gradient (decoupled weight decay)
+    public void step() {
+        beginStep();
+        for (int p = 0; p < params.size(); p++) {
+            for (int row = 0; row < params.get(p).getRows(); row++) {
+                update(p, row);
+            }
+        }
+    }
+
+    // Advances the step counter; follow with update() for every (param, row), possibly from several threads
+    public void beginStep() {
+        stepCount++;
+        biasCorrection1 = 1.0 - Math.pow(beta1, stepCount);
+        biasCorrection2 = 1.0 - Math.pow(beta2, stepCount);
+    }
+
+    // Updates one row of one parameter; AdamW is element-wise, so disjoint rows can be updated concurrently
+    public void update(int param, int row) {
+        double stepSize = learningRate / biasCorrection1;
+        double decay = 1.0 - learningRate * weightDecay[param];
+        double[] w = params.get(param).getData()[row];
+        double[] g = params.get(param).getGrad().getData()[row];
+        double[] m = firstMoment[param][row];
+        double[] v = secondMoment[param][row];
+        for (int j = 0; j < w.length; j++) {
+            double grad = g[j];
+            m[j] = beta1 * m[j] + (1.0 - beta1) * grad;
+            v[j] = beta2 * v[j] + (1.0 - beta2) * grad * grad;
+            double denom = Math.sqrt(v[j] / biasCorrection2) + eps;
+            w[j] = w[j] * decay - stepSize * m[j] / denom;
+        }
+    }
+
+    public void zeroGrad() {
+        for (Matrix param : params) {
+            param.zeroGrad();
+        }
+    }
+
+    public static void main(String[] args) {
+        // Fit LayerNorm -> MultiHeadAttention to a fixed random target with mean squared error
+        int numTokens = 8;
+        int embDim = 16;
+        LayerStack model = new LayerStack(
+                new LayerNorm(embDim),
+                new MultiHeadAttention(embDim, embDim, numTokens, 0.0, 4));
+        AdamW optimizer = new AdamW(model.parameters(), 1e-2);
+
+        Matrix input = Matrix.random(numTokens, embDim, 0, 1);
+        Matrix target = Matrix.random(numTokens, embDim, 0, 0.1);
+        Matrix gradOutput = new Matrix(numTokens, embDim);
+
+        for (int step = 0; step <= 200; step++) {
+            optimizer.zeroGrad();
+            double loss = Loss.meanSquaredError(model.forward(input), target, gradOutput, 1.0);
+            model.backward(gradOutput);
+            optimizer.step();
+            if (step % 50 == 0) {
+                System.out.println("Step " + step + " loss: " + loss);
+            }
+        }
+    }
+}
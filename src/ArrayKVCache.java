@@ -0,0 +1,47 @@
+// KV cache preallocated for a full context window
+public class ArrayKVCache implements KVCache {
+    private final double[][] keys;
+    private final double[][] values;
+    private int length;
+
+    public ArrayKVCache(int capacity, int dOut) {
+        this.keys = new double[capacity][dOut];
+        this.values = new double[capacity][dOut];
+    }
+
+    // Full cache over existing rows (not copied), so the keys and values of a whole forward can be passed wherever
+    // a KVCache is read
+    ArrayKVCache(double[][] keys, double[][] values) {
+        this.keys = keys;
+        this.values = values;
+        this.length = keys.length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void append(double[] key, double[] value) {
+        if (length == keys.length) {
+            throw new IllegalStateException("KV cache is full.");
+        }
+        System.arraycopy(key, 0, keys[length], 0, key.length);
+        System.arraycopy(value, 0, values[length], 0, value.length);
+        length++;
+    }
+
+    public double[] key(int position) {
+        return keys[position];
+    }
+
+    public double[] value(int position) {
+        return values[position];
+    }
+
+    public void truncate(int length) {
+        if (length < 0 || length > this.length) {
+            throw new IllegalArgumentException("Cannot truncate to " + length + " from " + this.length);
+        }
+        this.length = length;
+    }
+}
@@ -1,3 +1,6 @@
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -47,7 +50,7 @@ public class BytePairEncoding {
     }
 
     // main encoder class
-    public static class Encoder {
+    public static class Encoder implements Tokenizer {
         private final Map<String, Integer> encoder; // maps symbols to integers
         private final Map<Integer, String> decoder; // reverse map: integers to symbols
         private final Map<Integer, String> byteEncoder; // maps bytes to unicode
@@ -55,10 +58,12 @@ public class BytePairEncoding {
         private final Map<Pair<String, String>, Integer> bpeRanks; // ranking of symbol pairs
         private final Map<String, String> cache = new HashMap<>(); // cache for processed tokens
         private final Pattern pattern; // regex pattern for tokenizing text
+        private final int vocabSize; // largest id in encoder + 1
 
         // constructor to initialize the encoder
         public Encoder(Map<String, Integer> encoder, List<Pair<String, String>> bpeMerges, String errors) {
             this.encoder = encoder;
+            this.vocabSize = encoder.values().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
             this.decoder = encoder.entrySet().stream()
                     .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)); // reverse the encoder map
             this.byteEncoder = bytesToUnicode(); // get byte -> unicode mapping
@@ -92,8 +97,9 @@ public class BytePairEncoding {
                 List<String> newWord = new ArrayList<>();
                 for (int i = 0; i < word.length; ) {
                     // find the first occurrence of the pair
-                    int j = Arrays.asList(word).indexOf(first, i);
-                    if (j == -1) {
+                    int j = i;
+                    while (j < word.length && !word[j].equals(first)) j++;
+                    if (j == word.length) {
                         newWord.addAll(Arrays.asList(word).subList(i, word.length)); // add remaining characters
                         break;
                     }
@@ -115,42 +121,80 @@ public class BytePairEncoding {
             return result;
         }
 
+        public String name() {
+            return "gpt2-bpe";
+        }
+
+        // largest token id + 1, so every id the encoder can emit is in [0, vocabSize()) even if ids have gaps
+        public int vocabSize() {
+            return vocabSize;
+        }
+
+        // id of a single vocabulary symbol such as <|endoftext|>, or null if it is not in the vocabulary
+        public Integer tokenId(String symbol) {
+            return encoder.get(symbol);
+        }
+
         // method to encode text into BPE tokens
-        public List<Integer> encode(String text) {
-            List<Integer> bpeTokens = new ArrayList<>();
+        public void encode(String text, TokenSink sink) {
             Matcher matcher = pattern.matcher(text); // match tokens in the text
             while (matcher.find()) {
                 String token = matcher.group();
-                // convert token to bytes and apply BPE
-                token = token.chars()
-                        .mapToObj(c -> byteEncoder.get(c))
-                        .collect(Collectors.joining());
-                String[] splitBpeTokens = bpe(token).split(" "); // split BPE token
-                for (String bpeToken : splitBpeTokens) {
-                    bpeTokens.add(encoder.get(bpeToken)); // add encoded token
+                int start = matcher.start();
+                // convert token to utf-8 bytes, remembering the [start, end) chars each byte came from
+                byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+                int[] charStart = new int[bytes.length];
+                int[] charEnd = new int[bytes.length];
+                int b = 0;
+                for (int i = 0; i < token.length(); ) {
+                    int codePoint = token.codePointAt(i);
+                    int chars = Character.charCount(codePoint);
+                    int width = Character.isSurrogate(token.charAt(i)) && chars == 1 ? 1 // lone surrogate becomes '?'
+                            : codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+                    for (int k = 0; k < width && b < bytes.length; k++, b++) {
+                        charStart[b] = i;
+                        charEnd[b] = i + chars;
+                    }
+                    i += chars;
+                }
+
+                StringBuilder mapped = new StringBuilder(bytes.length);
+                for (byte value : bytes) {
+                    mapped.append(byteEncoder.get(value & 0xFF));
+                }
+                int byteOffset = 0;
+                for (String bpeToken : bpe(mapped.toString()).split(" ")) { // split BPE token
+                    int from = byteOffset;
+                    byteOffset += bpeToken.length(); // one char per byte
+                    sink.accept(encoder.get(bpeToken), start + charStart[from], start + charEnd[byteOffset - 1]);
                 }
             }
-            return bpeTokens; // return list of encoded tokens
         }
 
         // method to decode BPE tokens back into text
-        public String decode(List<Integer> tokens) {
-            String text = tokens.stream()
-                    .map(decoder::get)
-                    .collect(Collectors.joining()); // decode tokens into text
-            return text.chars()
-                    .mapToObj(c -> byteDecoder.get((char) c)) // decode bytes back to original characters
-                    .map(String::valueOf)
-                    .collect(Collectors.joining());
+        public String decode(int[] tokens, int from, int to) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int i = from; i < to; i++) {
+                String symbol = decoder.get(tokens[i]); // decode token into its byte-level symbols
+                for (int c = 0; c < symbol.length(); c++) {
+                    bytes.write(byteDecoder.get(String.valueOf(symbol.charAt(c)))); // back to the original byte
+                }
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // utility method to read the encoder.json vocabulary of a model
+    public static Map<String, Integer> loadVocabulary(String modelName, String modelsDir) throws IOException {
+        try (BufferedReader encoderReader = new BufferedReader(new FileReader(modelsDir + "/" + modelName + "/encoder.json"))) {
+            return new HashMap<>(new Gson().fromJson(encoderReader, new TypeToken<Map<String, Integer>>() {}.getType()));
         }
     }
 
     // utility method to load an encoder from files
     public static Encoder getEncoder(String modelName, String modelsDir) throws IOException {
         // read the encoder.json file
-        BufferedReader encoderReader = new BufferedReader(new FileReader(modelsDir + "/" + modelName + "/encoder.json"));
-        Map<String, Integer> encoder = new HashMap<>(new Gson().fromJson(encoderReader, new TypeToken<Map<String, Integer>>() {}.getType()));
-        encoderReader.close();
+        Map<String, Integer> encoder = loadVocabulary(modelName, modelsDir);
 
         // read the vocab.bpe file
         BufferedReader vocabReader = new BufferedReader(new FileReader(modelsDir + "/" + modelName + "/vocab.bpe"));
@@ -0,0 +1,240 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/*
+ Data-parallel training: every thread owns a full replica of the layer stack and runs forward/backward on its
+ own micro-batches, accumulating into its local gradient buffers. A step then runs one parallel pass in which
+ each worker owns a disjoint shard of parameter rows and, for every row in it,
+   1. sums the row's gradient across all replicas into replica 0 (reduce-scatter),
+   2. applies the AdamW update to that row of replica 0 (AdamW is element-wise),
+   3. copies the updated row back to the other replicas and clears its gradients (all-gather).
+ Shards never overlap, so the pass needs no locks and there is no serial optimizer section.
+*/
+public class DataParallelTrainer implements AutoCloseable {
+    private final int numReplicas;
+    private final Layer[] replicas;
+    private final List<List<Matrix>> replicaParams;
+    private final Matrix[] gradOutputs;
+    private final Loss loss;
+    private final AdamW optimizer;
+    private final ExecutorService pool;
+
+    // Shard w covers the flattened (param, row) units in [shardStart[w], shardStart[w + 1])
+    private final int[] unitParam;
+    private final int[] unitRow;
+    private final int[] shardStart;
+
+    private int pendingSamples;
+
+    public DataParallelTrainer(Supplier<Layer> modelFactory, Loss loss, int numReplicas, double learningRate) {
+        if (numReplicas < 1) {
+            throw new IllegalArgumentException("numReplicas must be at least 1");
+        }
+        this.numReplicas = numReplicas;
+        this.loss = loss;
+        this.replicas = new Layer[numReplicas];
+        this.replicaParams = new ArrayList<>();
+        this.gradOutputs = new Matrix[numReplicas];
+        for (int r = 0; r < numReplicas; r++) {
+            replicas[r] = modelFactory.get();
+            replicaParams.add(replicas[r].parameters());
+        }
+
+        List<Matrix> master = replicaParams.get(0);
+        for (int r = 1; r < numReplicas; r++) {
+            List<Matrix> params = replicaParams.get(r);
+            if (params.size() != master.size()) {
+                throw new IllegalArgumentException("Replicas must have identical parameter layouts.");
+            }
+            for (int p = 0; p < master.size(); p++) {
+                params.get(p).copyFrom(master.get(p));
+                params.get(p).getGrad();
+            }
+        }
+        this.optimizer = new AdamW(master, learningRate);
+
+        int totalRows = 0;
+        long totalElements = 0;
+        for (Matrix param : master) {
+            totalRows += param.getRows();
+            totalElements += (long) param.getRows() * param.getCols();
+        }
+        this.unitParam = new int[totalRows];
+        this.unitRow = new int[totalRows];
+        this.shardStart = new int[numReplicas + 1];
+        int unit = 0;
+        int shard = 1;
+        long elements = 0;
+        for (int p = 0; p < master.size(); p++) {
+            for (int row = 0; row < master.get(p).getRows(); row++) {
+                unitParam[unit] = p;
+                unitRow[unit] = row;
+                unit++;
+                elements += master.get(p).getCols();
+                // Close shards once they hold their share of elements so the workers stay balanced
+                while (shard < numReplicas && elements * numReplicas >= totalElements * shard) {
+                    shardStart[shard++] = unit;
+                }
+            }
+        }
+        while (shard <= numReplicas) {
+            shardStart[shard++] = totalRows;
+        }
+
+        this.pool = Executors.newFixedThreadPool(numReplicas);
+    }
+
+    // Replica 0 holds the trained weights
+    public Layer getModel() {
+        return replicas[0];
+    }
+
+    // Runs forward/backward for every sample without updating weights; returns the mean loss.
+    // Call several times before step() to accumulate gradients over a batch larger than one pass.
+    public double accumulate(List<Matrix> inputs, List<Matrix> targets) {
+        if (inputs.size() != targets.size()) {
+            throw new IllegalArgumentException("Inputs and targets must have the same size.");
+        }
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int r = 0; r < numReplicas; r++) {
+            final int replica = r;
+            tasks.add(() -> runReplica(replica, inputs, targets));
+        }
+        double loss = 0.0;
+        for (double replicaLoss : runAll(tasks)) {
+            loss += replicaLoss;
+        }
+        pendingSamples += inputs.size();
+        return inputs.isEmpty() ? 0.0 : loss / inputs.size();
+    }
+
+    // Averages the accumulated gradients across replicas and applies one optimizer update
+    public void step() {
+        if (pendingSamples == 0) {
+            return;
+        }
+        final double scale = 1.0 / pendingSamples;
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int w = 0; w < numReplicas; w++) {
+            final int shard = w;
+            tasks.add(() -> stepShard(shard, scale));
+        }
+        optimizer.beginStep();
+        runAll(tasks);
+        pendingSamples = 0;
+    }
+
+    public double trainStep(List<Matrix> inputs, List<Matrix> targets) {
+        double loss = accumulate(inputs, targets);
+        step();
+        return loss;
+    }
+
+    public void close() {
+        pool.shutdown();
+    }
+
+    // Replica r takes samples r, r + numReplicas, ... one micro-batch at a time
+    private double runReplica(int r, List<Matrix> inputs, List<Matrix> targets) {
+        Layer model = replicas[r];
+        double total = 0.0;
+        for (int i = r; i < inputs.size(); i += numReplicas) {
+            Matrix output = model.forward(inputs.get(i));
+            gradOutputs[r] = Matrix.reuse(gradOutputs[r], output.getRows(), output.getCols());
+            total += loss.compute(output, targets.get(i), gradOutputs[r], 1.0);
+            model.backward(gradOutputs[r]);
+        }
+        return total;
+    }
+
+    private double stepShard(int shard, double scale) {
+        List<Matrix> master = replicaParams.get(0);
+        for (int u = shardStart[shard]; u < shardStart[shard + 1]; u++) {
+            int p = unitParam[u];
+            int row = unitRow[u];
+            double[] sum = master.get(p).getGrad().getData()[row];
+            for (int r = 1; r < numReplicas; r++) {
+                double[] grad = replicaParams.get(r).get(p).getGrad().getData()[row];
+                for (int j = 0; j < sum.length; j++) {
+                    sum[j] += grad[j];
+                }
+            }
+            for (int j = 0; j < sum.length; j++) {
+                sum[j] *= scale;
+            }
+
+            optimizer.update(p, row);
+
+            double[] weights = master.get(p).getData()[row];
+            for (int r = 0; r < numReplicas; r++) {
+                Matrix param = replicaParams.get(r).get(p);
+                if (r > 0) {
+                    System.arraycopy(weights, 0, param.getData()[row], 0, weights.length);
+                }
+                Arrays.fill(param.getGrad().getData()[row], 0.0);
+            }
+        }
+        return 0.0;
+    }
+
+    private List<Double> runAll(List<Callable<Double>> tasks) {
+        List<Double> results = new ArrayList<>();
+        try {
+            for (Future<Double> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while training", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Replica failed", e.getCause());
+        }
+        return results;
+    }
+
+    public static void main(String[] args) {
+        // Strong-scaling benchmark: fixed global batch, 1..N replicas
+        int numTokens = 32;
+        int embDim = 64;
+        int batchSize = 64;
+        int steps = 5;
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        List<Matrix> inputs = new ArrayList<>();
+        List<Matrix> targets = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            inputs.add(Matrix.random(numTokens, embDim, 0, 1));
+            targets.add(Matrix.random(numTokens, embDim, 0, 0.1));
+        }
+        Supplier<Layer> factory = () -> new LayerStack(
+                new LayerNorm(embDim),
+                new MultiHeadAttention(embDim, embDim, numTokens, 0.1, 8));
+
+        // Powers of two, and always maxThreads itself
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        double baseline = 0.0;
+        for (int threads : threadCounts) {
+            try (DataParallelTrainer trainer = new DataParallelTrainer(factory, Loss::meanSquaredError, threads, 1e-3)) {
+                trainer.trainStep(inputs, targets); // warm-up
+                long start = System.nanoTime();
+                double loss = 0.0;
+                for (int s = 0; s < steps; s++) {
+                    loss = trainer.trainStep(inputs, targets);
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                double samplesPerSecond = steps * batchSize / seconds;
+                if (threads == 1) {
+                    baseline = samplesPerSecond;
+                }
+                System.out.printf("threads=%d samples/s=%.1f speedup=%.2fx loss=%.6f%n",
+                        threads, samplesPerSecond, samplesPerSecond / baseline, loss);
+            }
+        }
+    }
+}
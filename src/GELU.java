@@ -1,11 +1,42 @@
 public class GELU {
+    private static final double SQRT_2_OVER_PI = Math.sqrt(2.0 / Math.PI);
+    private static final double COEFF = 0.044715;
+
     public static Matrix forward(Matrix x) {
-        double sqrt2OverPi = Math.sqrt(2.0 / Math.PI);
-        return x.multiply(0.5).multiply(
-                Matrix.ones(x.getRows(), x.getCols())
-                        .add(x.multiply(sqrt2OverPi)
-                                .multiply(x.pow(3).multiply(0.044715))
-                                .tanh())
-        );
+        return forward(x, new Matrix(x.getRows(), x.getCols()));
+    }
+
+    // 0.5 * x * (1 + tanh(sqrt(2 / pi) * (x + 0.044715 * x^3))), written into out
+    public static Matrix forward(Matrix x, Matrix out) {
+        double[][] in = x.getData();
+        double[][] result = out.getData();
+        for (int i = 0; i < x.getRows(); i++) {
+            for (int j = 0; j < x.getCols(); j++) {
+                double v = in[i][j];
+                double t = Math.tanh(SQRT_2_OVER_PI * (v + COEFF * v * v * v));
+                result[i][j] = 0.5 * v * (1.0 + t);
+            }
+        }
+        return out;
+    }
+
+    public static Matrix backward(Matrix x, Matrix gradOutput) {
+        return backward(x, gradOutput, new Matrix(x.getRows(), x.getCols()));
+    }
+
+    // gradInput = gradOutput * d/dx GELU(x), recomputing tanh instead of caching it
+    public static Matrix backward(Matrix x, Matrix gradOutput, Matrix gradInput) {
+        double[][] in = x.getData();
+        double[][] dy = gradOutput.getData();
+        double[][] dx = gradInput.getData();
+        for (int i = 0; i < x.getRows(); i++) {
+            for (int j = 0; j < x.getCols(); j++) {
+                double v = in[i][j];
+                double t = Math.tanh(SQRT_2_OVER_PI * (v + COEFF * v * v * v));
+                double dInner = SQRT_2_OVER_PI * (1.0 + 3.0 * COEFF * v * v);
+                dx[i][j] = dy[i][j] * (0.5 * (1.0 + t) + 0.5 * v * (1.0 - t * t) * dInner);
+            }
+        }
+        return gradInput;
     }
 }
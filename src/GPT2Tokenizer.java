@@ -1,10 +1,14 @@
+import java.io.*;
 import java.util.*;
 import java.util.regex.*;
 
-public class GPT2Tokenizer {
+public class GPT2Tokenizer implements Tokenizer {
+    private static final Pattern WORD = Pattern.compile("\\b\\w+\\b|[.,!?;'\"]|\\s+");
+
     private Map<String, Integer> vocab;
     private Map<Integer, String> reverseVocab;
     private int eosTokenId;
+    private int vocabSize;
 
     public GPT2Tokenizer(Map<String, Integer> vocab) {
         this.vocab = vocab;
@@ -12,6 +16,7 @@ public class GPT2Tokenizer {
 
         for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
             reverseVocab.put(entry.getValue(), entry.getKey());
+            vocabSize = Math.max(vocabSize, entry.getValue() + 1);
         }
 
         // Assign <|endoftext|> token
@@ -22,23 +27,6 @@ public class GPT2Tokenizer {
         }
     }
 
-    // Tokenize input using regex and BPE logic
-    private List<String> tokenize(String text) {
-        text = text.toLowerCase();
-
-        String regex = "\\b\\w+\\b|[.,!?;'\"]|\\s+";
-        Matcher matcher = Pattern.compile(regex).matcher(text);
-
-        List<String> tokens = new ArrayList<>();
-        while (matcher.find()) {
-            String token = matcher.group().trim();
-            if (!token.isEmpty()) {
-                tokens.add(token);
-            }
-        }
-        return tokens;
-    }
-
     // Apply byte pair encoding (placeholder logic)
     private List<String> applyBPE(String word) {
         // This placeholder splits unknown words into characters (real BPE merges frequent subwords)
@@ -49,32 +37,82 @@ public class GPT2Tokenizer {
         return subwords;
     }
 
-    // Encode text into token IDs
-    public List<Integer> encode(String text) {
-        List<String> tokens = tokenize(text);
-        List<Integer> tokenIds = new ArrayList<>();
+    public String name() {
+        return "gpt2-simple";
+    }
+
+    public int vocabSize() {
+        return vocabSize;
+    }
+
+    // Encode text into token IDs, lowercased, followed by <|endoftext|>
+    public void encode(String text, TokenSink sink) {
+        encode(text, sink, true);
+    }
 
-        for (String token : tokens) {
+    private void encode(String text, TokenSink sink, boolean appendEos) {
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find()) {
+            String token = matcher.group().toLowerCase();
+            if (token.trim().isEmpty()) {
+                continue;
+            }
+            int start = matcher.start();
             if (vocab.containsKey(token)) {
-                tokenIds.add(vocab.get(token));
+                sink.accept(vocab.get(token), start, matcher.end());
             } else {
-                // Apply BPE to handle unknown words
+                // Apply BPE to handle unknown words; each subword is a single character
                 List<String> subwords = applyBPE(token);
-                for (String subword : subwords) {
-                    tokenIds.add(vocab.getOrDefault(subword, eosTokenId)); // Use <|endoftext|> as fallback
+                for (int i = 0; i < subwords.size(); i++) {
+                    sink.accept(vocab.getOrDefault(subwords.get(i), eosTokenId), start + i, start + i + 1); // Use <|endoftext|> as fallback
                 }
             }
         }
 
-        tokenIds.add(eosTokenId);
-        return tokenIds;
+        if (appendEos) {
+            sink.accept(eosTokenId, text.length(), text.length());
+        }
+    }
+
+    // The default streaming split encodes chunk by chunk; emit <|endoftext|> once for the whole stream
+    public void encode(Reader reader, TokenSink sink) throws IOException {
+        long[] length = new long[1];
+        Reader counting = new FilterReader(reader) {
+            @Override
+            public int read(char[] buffer, int offset, int count) throws IOException {
+                int read = super.read(buffer, offset, count);
+                length[0] += Math.max(read, 0);
+                return read;
+            }
+        };
+        // Same tokenizer without the trailing <|endoftext|>, so the default chunking can run over it
+        Tokenizer chunks = new Tokenizer() {
+            public String name() {
+                return GPT2Tokenizer.this.name();
+            }
+
+            public int vocabSize() {
+                return GPT2Tokenizer.this.vocabSize();
+            }
+
+            public void encode(String text, TokenSink chunkSink) {
+                GPT2Tokenizer.this.encode(text, chunkSink, false);
+            }
+
+            public String decode(int[] tokenIds, int from, int to) {
+                return GPT2Tokenizer.this.decode(tokenIds, from, to);
+            }
+        };
+        chunks.encode(counting, sink);
+        sink.accept(eosTokenId, (int) length[0], (int) length[0]);
     }
 
     // Decode token IDs back to text
-    public String decode(List<Integer> tokenIds) {
+    public String decode(int[] tokenIds, int from, int to) {
         StringBuilder decodedText = new StringBuilder();
 
-        for (int id : tokenIds) {
+        for (int i = from; i < to; i++) {
+            int id = tokenIds[i];
             if (id == eosTokenId) {
                 decodedText.append("<|endoftext|>");
             } else {
@@ -100,8 +138,8 @@ public class GPT2Tokenizer {
 
         // Encode text
         String text = "Hello, world. This is a test !";
-        List<Integer> encoded = tokenizer.encode(text);
-        System.out.println("Encoded: " + encoded);
+        int[] encoded = tokenizer.encode(text);
+        System.out.println("Encoded: " + Arrays.toString(encoded));
 
         // Decode back to text
         String decoded = tokenizer.decode(encoded);
@@ -0,0 +1,170 @@
+import java.util.*;
+
+/*
+ Decoder-only language model for inference built from the existing layers:
+   token + position embedding -> numLayers x (x + MultiHeadAttention(LayerNorm(x))) -> LayerNorm -> logits
+ Every forward is incremental over per-layer KV caches, so a prompt, a single decode step and a batch of
+ speculative tokens all go through the same call.
+*/
+public class GPTModel {
+    private final int vocabSize;
+    private final int embDim;
+    private final int contextLength;
+    private final Matrix tokenEmbedding;
+    private final Matrix positionEmbedding;
+    private final LayerNorm[] norms;
+    private final MultiHeadAttention[] attention;
+    private final LayerNorm finalNorm;
+    private final Matrix outHead;
+    private Matrix hidden;
+    private Matrix logits;
+
+    public GPTModel(int vocabSize, int embDim, int contextLength, int numHeads, int numLayers) {
+        this.vocabSize = vocabSize;
+        this.embDim = embDim;
+        this.contextLength = contextLength;
+        this.tokenEmbedding = Matrix.random(vocabSize, embDim, 0, 0.02);
+        this.positionEmbedding = Matrix.random(contextLength, embDim, 0, 0.02);
+        this.norms = new LayerNorm[numLayers];
+        this.attention = new MultiHeadAttention[numLayers];
+        for (int l = 0; l < numLayers; l++) {
+            norms[l] = new LayerNorm(embDim);
+            attention[l] = new MultiHeadAttention(embDim, embDim, contextLength, 0.0, numHeads);
+            attention[l].setTraining(false);
+        }
+        this.finalNorm = new LayerNorm(embDim);
+        this.outHead = Matrix.random(embDim, vocabSize, 0, 0.02);
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    public int getContextLength() {
+        return contextLength;
+    }
+
+    public int getNumLayers() {
+        return attention.length;
+    }
+
+    public int getEmbDim() {
+        return embDim;
+    }
+
+    // One empty cache per layer
+    public KVCache[] newCache() {
+        KVCache[] cache = new KVCache[attention.length];
+        for (int l = 0; l < cache.length; l++) {
+            cache[l] = new ArrayKVCache(contextLength, embDim);
+        }
+        return cache;
+    }
+
+    // Runs tokens[from, to) at the positions following those already cached and returns their
+    // (to - from, vocabSize) logits; the returned matrix is reused by the next call
+    public Matrix forward(int[] tokens, int from, int to, KVCache[] cache) {
+        int numTokens = to - from;
+        int past = cache[0].length();
+        hidden = Matrix.reuse(hidden, numTokens, embDim);
+        logits = Matrix.reuse(logits, numTokens, vocabSize);
+        double[][] x = hidden.getData();
+        for (int i = 0; i < numTokens; i++) {
+            double[] token = tokenEmbedding.getData()[tokens[from + i]];
+            double[] position = positionEmbedding.getData()[past + i];
+            for (int j = 0; j < embDim; j++) {
+                x[i][j] = token[j] + position[j];
+            }
+        }
+
+        try {
+            for (int l = 0; l < attention.length; l++) {
+                double[][] attended = attention[l].forward(norms[l].forward(hidden), cache[l]).getData();
+                for (int i = 0; i < numTokens; i++) {
+                    for (int j = 0; j < embDim; j++) {
+                        x[i][j] += attended[i][j];
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // A layer failed part-way (e.g. the paged store ran out of blocks); leave every layer at past positions
+            truncate(cache, past);
+            throw e;
+        }
+
+        Matrix.matmul(finalNorm.forward(hidden), outHead, logits, false);
+        return logits;
+    }
+
+    // Rolls every layer's cache back to the first length positions
+    public static void truncate(KVCache[] cache, int length) {
+        for (KVCache layer : cache) {
+            layer.truncate(length);
+        }
+    }
+
+    // Softmax of logits / temperature into probs; temperature 0 gives a one-hot argmax distribution
+    public static void probabilities(double[] logits, double temperature, double[] probs) {
+        if (temperature <= 0.0) {
+            int best = 0;
+            for (int i = 1; i < logits.length; i++) {
+                if (logits[i] > logits[best]) {
+                    best = i;
+                }
+            }
+            Arrays.fill(probs, 0.0);
+            probs[best] = 1.0;
+            return;
+        }
+        double max = Double.NEGATIVE_INFINITY;
+        for (double logit : logits) {
+            max = Math.max(max, logit);
+        }
+        double sum = 0.0;
+        for (int i = 0; i < logits.length; i++) {
+            probs[i] = Math.exp((logits[i] - max) / temperature);
+            sum += probs[i];
+        }
+        for (int i = 0; i < probs.length; i++) {
+            probs[i] /= sum;
+        }
+    }
+
+    public static int sample(double[] probs, Random random) {
+        double r = random.nextDouble();
+        double cumulative = 0.0;
+        for (int i = 0; i < probs.length; i++) {
+            cumulative += probs[i];
+            if (r < cumulative) {
+                return i;
+            }
+        }
+        // Rounding left r above the total; fall back to the last token with non-zero mass
+        for (int i = probs.length - 1; i > 0; i--) {
+            if (probs[i] > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    // Plain autoregressive decoding: one full forward per generated token
+    public int[] generate(int[] prompt, int maxNewTokens, double temperature, Random random) {
+        if (prompt.length == 0 || prompt.length >= contextLength) {
+            throw new IllegalArgumentException("Prompt must hold 1 to contextLength - 1 tokens.");
+        }
+        int total = Math.min(prompt.length + maxNewTokens, contextLength);
+        int[] sequence = Arrays.copyOf(prompt, total);
+        double[] probs = new double[vocabSize];
+        KVCache[] cache = newCache();
+        int length = prompt.length;
+        int cached = 0;
+        while (length < total) {
+            Matrix out = forward(sequence, cached, length, cache);
+            cached = length;
+            probabilities(out.getData()[out.getRows() - 1], temperature, probs);
+            sequence[length++] = sample(probs, random);
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,20 @@
+// Keys and values for blockSize consecutive positions across every layer; shared between sequences by reference count
+public class KVBlock {
+    final double[][][] keys; // [layer][slot][dOut]
+    final double[][][] values;
+    int refCount;
+
+    KVBlock(int numLayers, int blockSize, int dOut) {
+        this.keys = new double[numLayers][blockSize][dOut];
+        this.values = new double[numLayers][blockSize][dOut];
+    }
+
+    void copyFrom(KVBlock other) {
+        for (int l = 0; l < keys.length; l++) {
+            for (int s = 0; s < keys[l].length; s++) {
+                System.arraycopy(other.keys[l][s], 0, keys[l][s], 0, keys[l][s].length);
+                System.arraycopy(other.values[l][s], 0, values[l][s], 0, values[l][s].length);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+// Per-layer key/value rows for the positions a decoder has already processed
+public interface KVCache {
+    int length();
+
+    // Copies one position's key and value rows (length dOut) to the end of the cache
+    void append(double[] key, double[] value);
+
+    double[] key(int position);
+
+    double[] value(int position);
+
+    // Drops every position from length onwards (used to roll back rejected tokens)
+    void truncate(int length);
+}
@@ -0,0 +1,10 @@
+import java.util.*;
+
+// A trainable layer: backward must be called after the matching forward and accumulates into parameter gradients
+public interface Layer {
+    Matrix forward(Matrix input);
+
+    Matrix backward(Matrix gradOutput);
+
+    List<Matrix> parameters();
+}
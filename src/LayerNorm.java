@@ -1,8 +1,16 @@
-public class LayerNorm {
+import java.util.*;
+
+public class LayerNorm implements Layer {
     private final double eps = 1e-5;
     private final Matrix scale;
     private final Matrix shift;
 
+    // Normalized input and per-row 1/sqrt(var + eps), cached by forward for backward
+    private Matrix normX;
+    private double[] invStd = new double[0];
+    private Matrix output;
+    private Matrix gradInput;
+
     public LayerNorm(int embDim) {
         this.scale = new Matrix(1, embDim); // Initialize to 1
         this.shift = new Matrix(1, embDim); // Initialize to 0
@@ -12,10 +20,79 @@ public class LayerNorm {
         }
     }
 
+    // Row-wise normalization; the returned matrix is reused by the next call
     public Matrix forward(Matrix x) {
-        Matrix mean = x.mean(-1);
-        Matrix variance = x.variance(-1, false);
-        Matrix normX = x.subtract(mean).divide(Matrix.sqrt(variance.add(eps)));
-        return normX.multiply(scale).add(shift);
+        int rows = x.getRows();
+        int cols = x.getCols();
+        normX = Matrix.reuse(normX, rows, cols);
+        output = Matrix.reuse(output, rows, cols);
+        if (invStd.length != rows) {
+            invStd = new double[rows];
+        }
+        double[][] in = x.getData();
+        double[][] norm = normX.getData();
+        double[][] out = output.getData();
+        double[] gamma = scale.getData()[0];
+        double[] beta = shift.getData()[0];
+
+        for (int i = 0; i < rows; i++) {
+            double mean = 0.0;
+            for (int j = 0; j < cols; j++) {
+                mean += in[i][j];
+            }
+            mean /= cols;
+            double variance = 0.0;
+            for (int j = 0; j < cols; j++) {
+                double diff = in[i][j] - mean;
+                variance += diff * diff;
+            }
+            double rstd = 1.0 / Math.sqrt(variance / cols + eps);
+            invStd[i] = rstd;
+            for (int j = 0; j < cols; j++) {
+                double xHat = (in[i][j] - mean) * rstd;
+                norm[i][j] = xHat;
+                out[i][j] = xHat * gamma[j] + beta[j];
+            }
+        }
+        return output;
+    }
+
+    // Accumulates scale/shift gradients and returns the input gradient (reused by the next call).
+    // Per row: dx = rstd * (dxHat - mean(dxHat) - xHat * mean(dxHat * xHat)), fused into one kernel.
+    public Matrix backward(Matrix gradOutput) {
+        int rows = normX.getRows();
+        int cols = normX.getCols();
+        gradInput = Matrix.reuse(gradInput, rows, cols);
+        double[][] dy = gradOutput.getData();
+        double[][] norm = normX.getData();
+        double[][] dx = gradInput.getData();
+        double[] gamma = scale.getData()[0];
+        double[] dGamma = scale.getGrad().getData()[0];
+        double[] dBeta = shift.getGrad().getData()[0];
+
+        for (int i = 0; i < rows; i++) {
+            double sumDxHat = 0.0;
+            double sumDxHatXHat = 0.0;
+            for (int j = 0; j < cols; j++) {
+                double g = dy[i][j];
+                double xHat = norm[i][j];
+                double dxHat = g * gamma[j];
+                sumDxHat += dxHat;
+                sumDxHatXHat += dxHat * xHat;
+                dGamma[j] += g * xHat;
+                dBeta[j] += g;
+            }
+            double meanDxHat = sumDxHat / cols;
+            double meanDxHatXHat = sumDxHatXHat / cols;
+            for (int j = 0; j < cols; j++) {
+                double dxHat = dy[i][j] * gamma[j];
+                dx[i][j] = invStd[i] * (dxHat - meanDxHat - norm[i][j] * meanDxHatXHat);
+            }
+        }
+        return gradInput;
+    }
+
+    public List<Matrix> parameters() {
+        return Arrays.asList(scale, shift);
     }
 }
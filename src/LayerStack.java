@@ -0,0 +1,33 @@
+import java.util.*;
+
+public class LayerStack implements Layer {
+    private final List<Layer> layers;
+
+    public LayerStack(Layer... layers) {
+        this.layers = Arrays.asList(layers);
+    }
+
+    public Matrix forward(Matrix input) {
+        Matrix x = input;
+        for (Layer layer : layers) {
+            x = layer.forward(x);
+        }
+        return x;
+    }
+
+    public Matrix backward(Matrix gradOutput) {
+        Matrix grad = gradOutput;
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            grad = layers.get(i).backward(grad);
+        }
+        return grad;
+    }
+
+    public List<Matrix> parameters() {
+        List<Matrix> params = new ArrayList<>();
+        for (Layer layer : layers) {
+            params.addAll(layer.parameters());
+        }
+        return params;
+    }
+}
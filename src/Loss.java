@@ -0,0 +1,24 @@
+// Computes a loss for one sample and writes gradScale * dLoss/dOutput into gradOutput
+public interface Loss {
+    double compute(Matrix output, Matrix target, Matrix gradOutput, double gradScale);
+
+    // Mean squared error; writes gradScale * dLoss/dOutput into gradOutput and returns the loss
+    static double meanSquaredError(Matrix output, Matrix target, Matrix gradOutput, double gradScale) {
+        if (output.getRows() != target.getRows() || output.getCols() != target.getCols()) {
+            throw new IllegalArgumentException("Output and target dimensions must match.");
+        }
+        double[][] out = output.getData();
+        double[][] tgt = target.getData();
+        double[][] grad = gradOutput.getData();
+        int count = output.getRows() * output.getCols();
+        double loss = 0.0;
+        for (int i = 0; i < output.getRows(); i++) {
+            for (int j = 0; j < output.getCols(); j++) {
+                double diff = out[i][j] - tgt[i][j];
+                loss += diff * diff;
+                grad[i][j] = gradScale * 2.0 * diff / count;
+            }
+        }
+        return loss / count;
+    }
+}
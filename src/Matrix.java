@@ -2,6 +2,7 @@ public class Matrix {
     private final double[][] data;
     private final int rows;
     private final int cols;
+    private Matrix grad; // allocated on first use and reused across training steps
 
     public Matrix(int rows, int cols) {
         this.rows = rows;
@@ -27,6 +28,48 @@ public class Matrix {
         return data;
     }
 
+    // Gradient buffer with the same shape as this matrix, accumulated into by backward passes
+    public Matrix getGrad() {
+        if (grad == null) {
+            grad = new Matrix(rows, cols);
+        }
+        return grad;
+    }
+
+    public void zeroGrad() {
+        if (grad != null) {
+            grad.fill(0.0);
+        }
+    }
+
+    public void fill(double value) {
+        for (int i = 0; i < rows; i++) {
+            java.util.Arrays.fill(data[i], value);
+        }
+    }
+
+    public void copyFrom(Matrix other) {
+        if (this.rows != other.rows || this.cols != other.cols) {
+            throw new IllegalArgumentException("Matrix dimensions must match for copy.");
+        }
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(other.data[i], 0, data[i], 0, cols);
+        }
+    }
+
+    // View over the first rows of this matrix that shares its row storage (for capacity-sized buffers)
+    public Matrix topRows(int rows) {
+        return new Matrix(java.util.Arrays.copyOf(data, rows));
+    }
+
+    // Returns m if it already has the requested shape, otherwise a fresh matrix (used for scratch buffers)
+    public static Matrix reuse(Matrix m, int rows, int cols) {
+        if (m != null && m.rows == rows && m.cols == cols) {
+            return m;
+        }
+        return new Matrix(rows, cols);
+    }
+
     public static Matrix random(int rows, int cols, double mean, double std) {
         Matrix result = new Matrix(rows, cols);
         for (int i = 0; i < rows; i++) {
@@ -176,7 +219,6 @@ public class Matrix {
         }
         return result;
     }
-}
 
     public static Matrix transpose(Matrix m) {
         Matrix result = new Matrix(m.cols, m.rows);
@@ -231,4 +273,77 @@ public class Matrix {
         }
         return result;
     }
+
+    // Matrix product
+    public Matrix matmul(Matrix other) {
+        Matrix result = new Matrix(this.rows, other.cols);
+        matmul(this, other, result, false);
+        return result;
+    }
+
+    // out (+)= a * b
+    public static void matmul(Matrix a, Matrix b, Matrix out, boolean accumulate) {
+        if (a.cols != b.rows || out.rows != a.rows || out.cols != b.cols) {
+            throw new IllegalArgumentException("Matrix dimensions do not match for multiplication.");
+        }
+        if (!accumulate) {
+            out.fill(0.0);
+        }
+        for (int i = 0; i < a.rows; i++) {
+            double[] outRow = out.data[i];
+            for (int k = 0; k < a.cols; k++) {
+                double aik = a.data[i][k];
+                if (aik == 0.0) {
+                    continue;
+                }
+                double[] bRow = b.data[k];
+                for (int j = 0; j < b.cols; j++) {
+                    outRow[j] += aik * bRow[j];
+                }
+            }
+        }
+    }
+
+    // out (+)= transpose(a) * b, without materializing the transpose
+    public static void matmulTransposeA(Matrix a, Matrix b, Matrix out, boolean accumulate) {
+        if (a.rows != b.rows || out.rows != a.cols || out.cols != b.cols) {
+            throw new IllegalArgumentException("Matrix dimensions do not match for multiplication.");
+        }
+        if (!accumulate) {
+            out.fill(0.0);
+        }
+        for (int k = 0; k < a.rows; k++) {
+            double[] aRow = a.data[k];
+            double[] bRow = b.data[k];
+            for (int i = 0; i < a.cols; i++) {
+                double aki = aRow[i];
+                if (aki == 0.0) {
+                    continue;
+                }
+                double[] outRow = out.data[i];
+                for (int j = 0; j < b.cols; j++) {
+                    outRow[j] += aki * bRow[j];
+                }
+            }
+        }
+    }
+
+    // out (+)= a * transpose(b), without materializing the transpose
+    public static void matmulTransposeB(Matrix a, Matrix b, Matrix out, boolean accumulate) {
+        if (a.cols != b.cols || out.rows != a.rows || out.cols != b.rows) {
+            throw new IllegalArgumentException("Matrix dimensions do not match for multiplication.");
+        }
+        for (int i = 0; i < a.rows; i++) {
+            double[] aRow = a.data[i];
+            double[] outRow = out.data[i];
+            for (int j = 0; j < b.rows; j++) {
+                double[] bRow = b.data[j];
+                double sum = 0.0;
+                for (int k = 0; k < a.cols; k++) {
+                    sum += aRow[k] * bRow[k];
+                }
+                outRow[j] = accumulate ? outRow[j] + sum : sum;
+            }
+        }
+    }
 }
@@ -18,7 +18,8 @@ class MultiHeadAttention(nn.Module):
         self.dropout = nn.Dropout(dropout)
         self.register_buffer("mask", torch.triu(torch.ones(context_length, context_length), diagonal=1))
 */
-public class MultiHeadAttention {
+public class MultiHeadAttention implements Layer {
+        private final int dIn;
         private final int dOut;
         private final int numHeads;
         private final int headDim;
@@ -28,11 +29,41 @@ public class MultiHeadAttention {
         private final Matrix outProj;
         private final Matrix mask;
         private final double dropoutRate;
+        private final Random seeds = new Random();
+        private boolean training = true;
+
+        // Activations cached by forward for backward; reallocated only when the token count changes.
+        // Attention probabilities are never stored: backward recomputes them from the row log-sum-exp.
+        private Matrix input;
+        private Matrix queries;
+        private Matrix keys;
+        private Matrix values;
+        private Matrix context;
+        private Matrix output;
+        private double[][] rowLogSumExp = new double[0][0];
+        private double[] scoreRow = new double[0];
+        private Matrix[] inferenceBuffers;
+        private Matrix[][] inferenceViews;
+        private double[] cachedScoreRow;
+        private long dropoutSeed;
+        private double forwardDropoutRate; // rate the last forward(Matrix) applied, so backward ignores later setTraining
+
+        // Gradient buffers for the activations above
+        private Matrix gradQueries;
+        private Matrix gradKeys;
+        private Matrix gradValues;
+        private Matrix gradContext;
+        private Matrix gradInput;
+
         public MultiHeadAttention(int dIn, int dOut, int contextLength, double dropout, int numHeads) {
 
-            if (dOut % numHeads == 0) {
+            if (dOut % numHeads != 0) {
                 throw new IllegalArgumentException("num_heads must divide d_out");
             }
+            if (!(dropout >= 0.0 && dropout < 1.0)) {
+                throw new IllegalArgumentException("dropout must be in [0, 1)");
+            }
+            this.dIn = dIn;
             this.dOut = dOut;
             this.numHeads = numHeads;
             this.headDim = dOut / numHeads;
@@ -51,81 +82,296 @@ public class MultiHeadAttention {
             }
         }
 
-         public Matrix forward (Matrix input){
-             int b = input.getRows();
-             int numTokens = input.getCols();
+    // Dropout is only applied in training mode
+    public void setTraining(boolean training) {
+        this.training = training;
+    }
 
-             Matrix keys = input.multiply(WKey);
-             Matrix queries = input.multiply(WQuery);
-             Matrix values = input.multiply(WValue);
+    public List<Matrix> parameters() {
+        return Arrays.asList(WQuery, WKey, WValue, outProj);
+    }
+
+    int getDIn() {
+        return dIn;
+    }
 
-             // Reshape into multi-head dimensions: (b, numTokens, numHeads, headDim)
-             keys = reshapeForMultiHead(keys, b, numTokens, numHeads, headDim);
-             queries = reshapeForMultiHead(queries, b, numTokens, numHeads, headDim);
-             values = reshapeForMultiHead(values, b, numTokens, numHeads, headDim);
-             
-             Matrix keysTransposed = Matrix.transpose(keys);
-             Matrix queriesTransposed = Matrix.transpose(queries);
-             Matrix valuesTransposed = Matrix.transpose(values);
+    int getDOut() {
+        return dOut;
+    }
 
-//             Compute scaled dot-product attention (aka self-attention) with a causal mask
-             Matrix attnScores = queries.multiply(keysTransposed);
-             attnScores = attnScores.divide(Math.sqrt(headDim));
-             attnScores = Matrix.applyMask(attnScores,mask);
+    int getNumHeads() {
+        return numHeads;
+    }
 
-             Matrix attnWeights = Matrix.softmax(attnScores);
-             attnWeights = Matrix.dropout(attnWeights, dropoutRate);
+    int getHeadDim() {
+        return headDim;
+    }
 
-             // Compute context vectors
-             Matrix contextVec = attnWeights.multiply(values);
+    Matrix getWQuery() {
+        return WQuery;
+    }
 
-             // Combine heads back into (b, numTokens, dOut)
-             contextVec = combineHeads(contextVec, b, numTokens);
+    Matrix getWKey() {
+        return WKey;
+    }
 
-             // Final linear projection
-             contextVec = contextVec.multiply(outProj);
+    Matrix getWValue() {
+        return WValue;
+    }
 
-             return contextVec;
-         }
+    Matrix getOutProj() {
+        return outProj;
+    }
 
-    private Matrix reshapeForMultiHead(Matrix m, int b, int numTokens, int numHeads, int headDim) {
-        // Reshape matrix (b, numTokens * numHeads * headDim) for multi-head attention
-        double[][] data = m.getData();
-        double[][] reshapedData = new double[b * numHeads][numTokens * headDim / numHeads];
+    Matrix getMask() {
+        return mask;
+    }
 
-        for (int i = 0; i < b; i++) {
-            for (int j = 0; j < numTokens; j++) {
-                for (int h = 0; h < numHeads; h++) {
-                    for (int d = 0; d < headDim; d++) {
-                        reshapedData[i * numHeads + h][j * headDim + d] = data[i][j * headDim * numHeads + h * headDim + d];
-                    }
-                }
+    // input is (numTokens, dIn); returns (numTokens, dOut), reused by the next call
+    public Matrix forward(Matrix input) {
+        int numTokens = input.getRows();
+        if (input.getCols() != dIn) {
+            throw new IllegalArgumentException("Input width must equal d_in.");
+        }
+        if (numTokens > mask.getRows()) {
+            throw new IllegalArgumentException("Input is longer than the context length.");
+        }
+        ensureBuffers(numTokens);
+        this.input = input;
+
+        Matrix.matmul(input, WKey, keys, false);
+        Matrix.matmul(input, WQuery, queries, false);
+        Matrix.matmul(input, WValue, values, false);
+
+        // Each head reads and writes its own column slice, so context is already in combined (numTokens, dOut) layout
+        dropoutSeed = seeds.nextLong();
+        forwardDropoutRate = training ? dropoutRate : 0.0;
+        KVCache kv = new ArrayKVCache(keys.getData(), values.getData());
+        for (int h = 0; h < numHeads; h++) {
+            attendHead(queries.getData(), kv, context.getData(), mask.getData(), h * headDim, headDim,
+                    0, numTokens, scoreRow, rowLogSumExp[h], forwardDropoutRate, dropoutSeed, h);
+        }
+
+        // Final linear projection
+        Matrix.matmul(context, outProj, output, false);
+        return output;
+    }
+
+    // Incremental inference: input holds the next numTokens positions after those already in cache. Their keys and
+    // values are appended to the cache and each query attends over every cached position it may see.
+    // No dropout, and backward() is rejected afterwards; the returned matrix is reused by the next call.
+    public Matrix forward(Matrix input, KVCache cache) {
+        int numTokens = input.getRows();
+        int past = cache.length();
+        if (input.getCols() != dIn) {
+            throw new IllegalArgumentException("Input width must equal d_in.");
+        }
+        if (numTokens < 1 || past + numTokens > mask.getRows()) {
+            throw new IllegalArgumentException("Input must hold 1 to context length - cached positions tokens.");
+        }
+        this.input = null; // backward() needs a training forward
+        Matrix[] buffers = inferenceBuffers(numTokens);
+        Matrix cachedQueries = buffers[0];
+        Matrix cachedKeys = buffers[1];
+        Matrix cachedValues = buffers[2];
+        Matrix cachedContext = buffers[3];
+        Matrix cachedOutput = buffers[4];
+
+        Matrix.matmul(input, WKey, cachedKeys, false);
+        Matrix.matmul(input, WQuery, cachedQueries, false);
+        Matrix.matmul(input, WValue, cachedValues, false);
+        for (int i = 0; i < numTokens; i++) {
+            cache.append(cachedKeys.getData()[i], cachedValues.getData()[i]);
+        }
+
+        for (int h = 0; h < numHeads; h++) {
+            attendHead(cachedQueries.getData(), cache, cachedContext.getData(), mask.getData(), h * headDim, headDim,
+                    past, numTokens, cachedScoreRow, null, 0.0, 0L, h);
+        }
+
+        Matrix.matmul(cachedContext, outProj, cachedOutput, false);
+        return cachedOutput;
+    }
+
+    // Inference buffers (queries, keys, values, context, output) sized for the full context, handed out as views
+    // over their first numTokens rows; views are built once per token count so decoding does not allocate
+    private Matrix[] inferenceBuffers(int numTokens) {
+        if (inferenceBuffers == null) {
+            int capacity = mask.getRows();
+            inferenceBuffers = new Matrix[5];
+            for (int b = 0; b < inferenceBuffers.length; b++) {
+                inferenceBuffers[b] = new Matrix(capacity, dOut);
             }
+            inferenceViews = new Matrix[capacity + 1][];
+            cachedScoreRow = new double[capacity];
         }
+        if (inferenceViews[numTokens] == null) {
+            Matrix[] views = new Matrix[inferenceBuffers.length];
+            for (int b = 0; b < views.length; b++) {
+                views[b] = inferenceBuffers[b].topRows(numTokens);
+            }
+            inferenceViews[numTokens] = views;
+        }
+        return inferenceViews[numTokens];
+    }
+
+    // Accumulates weight gradients and returns the input gradient (reused by the next call)
+    public Matrix backward(Matrix gradOutput) {
+        if (input == null) {
+            throw new IllegalStateException("backward() must follow forward(Matrix); the KV-cached forward is inference-only.");
+        }
+        int numTokens = input.getRows();
+
+        Matrix.matmulTransposeA(context, gradOutput, outProj.getGrad(), true);
+        Matrix.matmulTransposeB(gradOutput, outProj, gradContext, false);
+
+        gradQueries.fill(0.0);
+        gradKeys.fill(0.0);
+        gradValues.fill(0.0);
+        for (int h = 0; h < numHeads; h++) {
+            attendHeadBackward(h, numTokens);
+        }
+
+        Matrix.matmulTransposeA(input, gradQueries, WQuery.getGrad(), true);
+        Matrix.matmulTransposeA(input, gradKeys, WKey.getGrad(), true);
+        Matrix.matmulTransposeA(input, gradValues, WValue.getGrad(), true);
 
-        return new Matrix(reshapedData);
+        Matrix.matmulTransposeB(gradQueries, WQuery, gradInput, false);
+        Matrix.matmulTransposeB(gradKeys, WKey, gradInput, true);
+        Matrix.matmulTransposeB(gradValues, WValue, gradInput, true);
+        return gradInput;
     }
 
-    private Matrix combineHeads(Matrix contextVec, int b, int numTokens) {
-        // Logic for combining heads (b, numHeads, numTokens, headDim) to (b, numTokens, dOut)
-        double[][] data = contextVec.getData();
-        double[][] combined = new double[b][numTokens * dOut];
+    private void ensureBuffers(int numTokens) {
+        queries = Matrix.reuse(queries, numTokens, dOut);
+        keys = Matrix.reuse(keys, numTokens, dOut);
+        values = Matrix.reuse(values, numTokens, dOut);
+        context = Matrix.reuse(context, numTokens, dOut);
+        output = Matrix.reuse(output, numTokens, dOut);
+        gradQueries = Matrix.reuse(gradQueries, numTokens, dOut);
+        gradKeys = Matrix.reuse(gradKeys, numTokens, dOut);
+        gradValues = Matrix.reuse(gradValues, numTokens, dOut);
+        gradContext = Matrix.reuse(gradContext, numTokens, dOut);
+        gradInput = Matrix.reuse(gradInput, numTokens, dIn);
+        if (scoreRow.length != numTokens) {
+            scoreRow = new double[numTokens];
+            rowLogSumExp = new double[numHeads][numTokens];
+        }
+    }
+
+    // Scaled dot-product attention with a causal mask for the head whose columns start at offset. Query row i sits
+    // at position past + i and attends over the keys and values kv holds for positions [0, past + numTokens).
+    // Shared by the training forward (past 0, kv over its own rows), the KV-cached forward and TensorParallelAttention;
+    // dropoutRate 0 disables dropout and rowLogSumExp may be null when no backward follows.
+    static void attendHead(double[][] q, KVCache kv, double[][] ctx, double[][] m, int offset, int headDim,
+                           int past, int numTokens, double[] scoreRow, double[] rowLogSumExp,
+                           double dropoutRate, long dropoutSeed, int h) {
+        double scale = 1.0 / Math.sqrt(headDim);
+        boolean drop = dropoutRate > 0;
+        double keepScale = 1.0 / (1.0 - dropoutRate);
+        int visible = past + numTokens;
 
-        for (int i = 0; i < b; i++) {
+        for (int i = 0; i < numTokens; i++) {
+            double[] maskRow = m[past + i];
+            double rowMax = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < visible; j++) {
+                if (maskRow[j] != 0) {
+                    continue;
+                }
+                double score = dot(q[i], kv.key(j), offset, headDim) * scale;
+                scoreRow[j] = score;
+                rowMax = Math.max(rowMax, score);
+            }
+
+            double sum = 0.0;
+            for (int j = 0; j < visible; j++) {
+                if (maskRow[j] != 0) {
+                    continue;
+                }
+                scoreRow[j] = Math.exp(scoreRow[j] - rowMax);
+                sum += scoreRow[j];
+            }
+            if (rowLogSumExp != null) {
+                rowLogSumExp[i] = rowMax + Math.log(sum);
+            }
+
+            Arrays.fill(ctx[i], offset, offset + headDim, 0.0);
+            for (int j = 0; j < visible; j++) {
+                if (maskRow[j] != 0) {
+                    continue;
+                }
+                double p = scoreRow[j] / sum;
+                if (drop) {
+                    p *= dropoutMask(dropoutSeed, dropoutRate, h, i, j, numTokens) * keepScale;
+                }
+                if (p == 0.0) {
+                    continue;
+                }
+                double[] v = kv.value(j);
+                for (int d = 0; d < headDim; d++) {
+                    ctx[i][offset + d] += p * v[offset + d];
+                }
+            }
+        }
+    }
+
+    // Recomputes each probability from the cached log-sum-exp and uses
+    // sum_j P_ij * dP_ij == dContext_i . context_i to avoid a second pass over the row
+    private void attendHeadBackward(int h, int numTokens) {
+        double[][] q = queries.getData();
+        double[][] k = keys.getData();
+        double[][] v = values.getData();
+        double[][] ctx = context.getData();
+        double[][] dCtx = gradContext.getData();
+        double[][] dq = gradQueries.getData();
+        double[][] dk = gradKeys.getData();
+        double[][] dv = gradValues.getData();
+        double[][] m = mask.getData();
+        double scale = 1.0 / Math.sqrt(headDim);
+        int offset = h * headDim;
+        boolean drop = forwardDropoutRate > 0;
+        double keepScale = 1.0 / (1.0 - forwardDropoutRate);
+
+        for (int i = 0; i < numTokens; i++) {
+            double delta = dot(dCtx[i], ctx[i], offset, headDim);
+            double lse = rowLogSumExp[h][i];
             for (int j = 0; j < numTokens; j++) {
-                for (int h = 0; h < numHeads; h++) {
-                    for (int d = 0; d < headDim; d++) {
-                        combined[i][j * dOut + h * headDim + d] = data[i * numHeads + h][j * headDim + d];
-                    }
+                if (m[i][j] != 0) {
+                    continue;
+                }
+                double p = Math.exp(dot(q[i], k[j], offset, headDim) * scale - lse);
+                double dropScale = drop ? dropoutMask(dropoutSeed, forwardDropoutRate, h, i, j, numTokens) * keepScale : 1.0;
+                double pDropped = p * dropScale;
+                for (int d = 0; d < headDim; d++) {
+                    dv[j][offset + d] += pDropped * dCtx[i][offset + d];
+                }
+                double dScore = p * (dot(dCtx[i], v[j], offset, headDim) * dropScale - delta) * scale;
+                for (int d = 0; d < headDim; d++) {
+                    dq[i][offset + d] += dScore * k[j][offset + d];
+                    dk[j][offset + d] += dScore * q[i][offset + d];
                 }
             }
         }
+    }
+
+    private static double dot(double[] a, double[] b, int offset, int length) {
+        double sum = 0.0;
+        for (int d = offset; d < offset + length; d++) {
+            sum += a[d] * b[d];
+        }
+        return sum;
+    }
 
-        return new Matrix(combined);
+    // Stateless dropout mask derived from the per-forward seed, so backward regenerates it instead of storing it
+    private static double dropoutMask(long dropoutSeed, double dropoutRate, int h, int i, int j, int numTokens) {
+        long z = dropoutSeed + (((long) h * numTokens + i) * numTokens + j) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53 < dropoutRate ? 0.0 : 1.0;
     }
 }
 
-
 /*
     def forward(self, x):
         b, num_tokens, d_in = x.shape
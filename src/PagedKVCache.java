@@ -0,0 +1,113 @@
+import java.util.*;
+
+/*
+ One sequence's KV cache as a table of fixed-size blocks owned by a PrefixKVStore. Leading blocks may be shared
+ with other sequences through the store's prefix index; writing into a shared block first copies it.
+ Pass layers() to GPTModel.forward.
+*/
+public class PagedKVCache {
+    private final PrefixKVStore store;
+    private final int blockSize;
+    private final List<KVBlock> blocks = new ArrayList<>();
+    private final int[] lengths; // positions written, per layer
+    private final KVCache[] layers;
+
+    PagedKVCache(PrefixKVStore store, int numLayers, int blockSize) {
+        this.store = store;
+        this.blockSize = blockSize;
+        this.lengths = new int[numLayers];
+        this.layers = new KVCache[numLayers];
+        for (int l = 0; l < numLayers; l++) {
+            layers[l] = new LayerView(l);
+        }
+    }
+
+    public KVCache[] layers() {
+        return layers;
+    }
+
+    // Positions whose keys and values are present in every layer
+    public int length() {
+        int length = Integer.MAX_VALUE;
+        for (int layerLength : lengths) {
+            length = Math.min(length, layerLength);
+        }
+        return length;
+    }
+
+    // Returns every block to the store; the cache is empty afterwards
+    public void release() {
+        for (KVBlock block : blocks) {
+            store.release(block);
+        }
+        blocks.clear();
+        Arrays.fill(lengths, 0);
+    }
+
+    KVBlock block(int index) {
+        return blocks.get(index);
+    }
+
+    // Starts the sequence from blocks already referenced on its behalf
+    void adopt(List<KVBlock> shared, int length) {
+        blocks.addAll(shared);
+        Arrays.fill(lengths, length);
+    }
+
+    private void append(int layer, double[] key, double[] value) {
+        int position = lengths[layer];
+        int index = position / blockSize;
+        if (index == blocks.size()) {
+            blocks.add(store.allocate());
+        }
+        KVBlock block = store.makeWritable(blocks.get(index));
+        blocks.set(index, block);
+        int slot = position % blockSize;
+        System.arraycopy(key, 0, block.keys[layer][slot], 0, key.length);
+        System.arraycopy(value, 0, block.values[layer][slot], 0, value.length);
+        lengths[layer]++;
+    }
+
+    private void truncate(int layer, int length) {
+        if (length < 0 || length > lengths[layer]) {
+            throw new IllegalArgumentException("Cannot truncate to " + length + " from " + lengths[layer]);
+        }
+        lengths[layer] = length;
+        int longest = 0;
+        for (int layerLength : lengths) {
+            longest = Math.max(longest, layerLength);
+        }
+        int needed = (longest + blockSize - 1) / blockSize;
+        while (blocks.size() > needed) {
+            store.release(blocks.remove(blocks.size() - 1));
+        }
+    }
+
+    private class LayerView implements KVCache {
+        private final int layer;
+
+        LayerView(int layer) {
+            this.layer = layer;
+        }
+
+        public int length() {
+            return lengths[layer];
+        }
+
+        public void append(double[] key, double[] value) {
+            PagedKVCache.this.append(layer, key, value);
+        }
+
+        public double[] key(int position) {
+            return blocks.get(position / blockSize).keys[layer][position % blockSize];
+        }
+
+        public double[] value(int position) {
+            return blocks.get(position / blockSize).values[layer][position % blockSize];
+        }
+
+        public void truncate(int length) {
+            PagedKVCache.this.truncate(layer, length);
+        }
+    }
+}
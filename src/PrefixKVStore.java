@@ -0,0 +1,225 @@
+import java.util.*;
+
+/*
+ Paged KV storage shared across requests. Memory is a fixed budget of KVBlocks, each holding blockSize positions
+ for every layer. Fully computed blocks are published into a radix tree whose edges are blockSize token ids, so a
+ request whose prompt starts with an already-seen prefix adopts those blocks instead of recomputing them.
+
+ Blocks are reference counted: the tree holds one reference per block, and each PagedKVCache holds one per block
+ in its table. When the budget is exhausted, least recently used leaves that no request references are evicted.
+*/
+public class PrefixKVStore {
+    private final int numLayers;
+    private final int blockSize;
+    private final int dOut;
+    private final int maxBlocks;
+    private final Deque<KVBlock> freeBlocks = new ArrayDeque<>();
+    private int allocatedBlocks;
+    private final Node root = new Node(null, null, null);
+    private final LinkedHashMap<Node, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long lookupTokens;
+    private long hitTokens;
+    private long evictions;
+
+    private static class Node {
+        private final Node parent;
+        private final BlockKey key;
+        private final KVBlock block;
+        private final Map<BlockKey, Node> children = new HashMap<>();
+
+        Node(Node parent, BlockKey key, KVBlock block) {
+            this.parent = parent;
+            this.key = key;
+            this.block = block;
+        }
+    }
+
+    // The blockSize token ids covered by one block
+    private static class BlockKey {
+        private final int[] tokens;
+        private final int hash;
+
+        BlockKey(int[] tokens, int from, int length) {
+            this.tokens = Arrays.copyOfRange(tokens, from, from + length);
+            this.hash = Arrays.hashCode(this.tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BlockKey && Arrays.equals(tokens, ((BlockKey) o).tokens);
+        }
+    }
+
+    public PrefixKVStore(int numLayers, int dOut, int blockSize, long memoryBudgetBytes) {
+        this.numLayers = numLayers;
+        this.dOut = dOut;
+        this.blockSize = blockSize;
+        long blockBytes = 2L * numLayers * blockSize * dOut * Double.BYTES;
+        this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, memoryBudgetBytes / blockBytes);
+        if (maxBlocks < 1) {
+            throw new IllegalArgumentException("Memory budget is smaller than one block.");
+        }
+    }
+
+    public PrefixKVStore(GPTModel model, int blockSize, long memoryBudgetBytes) {
+        this(model.getNumLayers(), model.getEmbDim(), blockSize, memoryBudgetBytes);
+    }
+
+    // New cache for tokens, pre-filled with the longest cached block-aligned prefix. At least the last token is
+    // left uncached so the caller's forward over tokens[cache.length(), tokens.length) produces its logits.
+    public synchronized PagedKVCache acquire(int[] tokens) {
+        List<KVBlock> matched = new ArrayList<>();
+        Node node = root;
+        for (int from = 0; from + blockSize <= tokens.length; from += blockSize) {
+            Node child = node.children.get(new BlockKey(tokens, from, blockSize));
+            if (child == null) {
+                break;
+            }
+            lru.get(child);
+            child.block.refCount++;
+            matched.add(child.block);
+            node = child;
+        }
+        int length = Math.min(matched.size() * blockSize, Math.max(0, tokens.length - 1));
+        PagedKVCache cache = new PagedKVCache(this, numLayers, blockSize);
+        cache.adopt(matched, length);
+        lookupTokens += tokens.length;
+        hitTokens += length;
+        return cache;
+    }
+
+    // Indexes every full block of cache, whose positions hold tokens[0, cache.length()), for later requests
+    public synchronized void publish(int[] tokens, PagedKVCache cache) {
+        int fullBlocks = Math.min(cache.length(), tokens.length) / blockSize;
+        Node node = root;
+        for (int b = 0; b < fullBlocks; b++) {
+            BlockKey key = new BlockKey(tokens, b * blockSize, blockSize);
+            Node child = node.children.get(key);
+            if (child == null) {
+                KVBlock block = cache.block(b);
+                block.refCount++;
+                child = new Node(node, key, block);
+                node.children.put(key, child);
+                lru.put(child, Boolean.TRUE);
+            } else {
+                lru.get(child);
+            }
+            node = child;
+        }
+    }
+
+    // Fraction of looked-up prompt tokens served from cached blocks
+    public synchronized double getHitRate() {
+        return lookupTokens == 0 ? 0.0 : (double) hitTokens / lookupTokens;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getBlocksInUse() {
+        return allocatedBlocks - freeBlocks.size();
+    }
+
+    public int getMaxBlocks() {
+        return maxBlocks;
+    }
+
+    synchronized KVBlock allocate() {
+        KVBlock block = freeBlocks.poll();
+        if (block == null && allocatedBlocks < maxBlocks) {
+            allocatedBlocks++;
+            block = new KVBlock(numLayers, blockSize, dOut);
+        }
+        while (block == null && evictOne()) {
+            block = freeBlocks.poll();
+        }
+        if (block == null) {
+            throw new IllegalStateException("KV memory budget exhausted by active requests.");
+        }
+        block.refCount = 1;
+        return block;
+    }
+
+    // Copy on write: returns block itself if only the caller references it, otherwise a private copy, dropping the
+    // caller's reference to the shared original. Reference counts are only read and written under this lock.
+    synchronized KVBlock makeWritable(KVBlock block) {
+        if (block.refCount == 1) {
+            return block;
+        }
+        KVBlock copy = allocate();
+        copy.copyFrom(block);
+        release(block);
+        return copy;
+    }
+
+    synchronized void release(KVBlock block) {
+        if (--block.refCount == 0) {
+            freeBlocks.push(block);
+        }
+    }
+
+    // Drops the least recently used leaf that only the tree still references
+    private boolean evictOne() {
+        Iterator<Node> it = lru.keySet().iterator();
+        while (it.hasNext()) {
+            Node node = it.next();
+            if (node.children.isEmpty() && node.block.refCount == 1) {
+                it.remove();
+                node.parent.children.remove(node.key);
+                release(node.block);
+                evictions++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        // Time to first token for requests sharing a long system prompt
+        int vocabSize = 1000;
+        int contextLength = 512;
+        int systemTokens = 384;
+        int userTokens = 16;
+        int requests = 8;
+        GPTModel model = new GPTModel(vocabSize, 128, contextLength, 8, 4);
+        PrefixKVStore store = new PrefixKVStore(model, 16, 64L << 20);
+
+        Random random = new Random(42);
+        int[] systemPrompt = new int[systemTokens];
+        for (int i = 0; i < systemTokens; i++) {
+            systemPrompt[i] = random.nextInt(vocabSize);
+        }
+        List<int[]> prompts = new ArrayList<>();
+        for (int r = 0; r < requests; r++) {
+            int[] prompt = Arrays.copyOf(systemPrompt, systemTokens + userTokens);
+            for (int i = systemTokens; i < prompt.length; i++) {
+                prompt[i] = random.nextInt(vocabSize);
+            }
+            prompts.add(prompt);
+        }
+
+        double fullMillis = 0.0;
+        double cachedMillis = 0.0;
+        for (int[] prompt : prompts) {
+            long start = System.nanoTime();
+            model.forward(prompt, 0, prompt.length, model.newCache());
+            fullMillis += (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            PagedKVCache cache = store.acquire(prompt);
+            model.forward(prompt, cache.length(), prompt.length, cache.layers());
+            cachedMillis += (System.nanoTime() - start) / 1e6;
+            store.publish(prompt, cache);
+            cache.release();
+        }
+        System.out.printf("TTFT without prefix cache: %.2fms%n", fullMillis / requests);
+        System.out.printf("TTFT with prefix cache:    %.2fms (hit rate %.2f, %d/%d blocks)%n",
+                cachedMillis / requests, store.getHitRate(), store.getBlocksInUse(), store.getMaxBlocks());
+    }
+}
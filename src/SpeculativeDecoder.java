@@ -0,0 +1,174 @@
+import java.util.*;
+
+/*
+ Speculative decoding (Leviathan et al.): a small draft model proposes k tokens one at a time, the target model
+ scores all of them in a single batched forward, and each draft token d is accepted with probability
+ min(1, p(d) / q(d)). On the first rejection a replacement is sampled from normalize(max(0, p - q)); if all k are
+ accepted a bonus token is sampled from the target. The result has exactly the target model's distribution.
+ Both models' KV caches are then truncated to the accepted prefix.
+*/
+public class SpeculativeDecoder {
+    private final GPTModel target;
+    private final GPTModel draft;
+    private final int lookahead;
+    private final double temperature;
+    private final Random random;
+    private final double[][] draftProbs;
+    private final double[][] targetProbs;
+    private final double[] residual;
+    private long proposedTokens;
+    private long acceptedTokens;
+    private long emittedTokens; // accepted drafts plus replacement/bonus tokens actually written
+    private long targetForwards;
+
+    public SpeculativeDecoder(GPTModel target, GPTModel draft, int lookahead, double temperature, Random random) {
+        if (target.getVocabSize() != draft.getVocabSize()) {
+            throw new IllegalArgumentException("Draft and target models must share a vocabulary.");
+        }
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("lookahead must be at least 1");
+        }
+        this.target = target;
+        this.draft = draft;
+        this.lookahead = lookahead;
+        this.temperature = temperature;
+        this.random = random;
+        this.draftProbs = new double[lookahead][target.getVocabSize()];
+        this.targetProbs = new double[lookahead + 1][target.getVocabSize()];
+        this.residual = new double[target.getVocabSize()];
+    }
+
+    public int[] generate(int[] prompt, int maxNewTokens) {
+        int maxLength = Math.min(target.getContextLength(), draft.getContextLength());
+        if (prompt.length == 0 || prompt.length >= maxLength) {
+            throw new IllegalArgumentException("Prompt must hold 1 to contextLength - 1 tokens.");
+        }
+        int total = Math.min(prompt.length + maxNewTokens, maxLength);
+        int[] sequence = Arrays.copyOf(prompt, total);
+        KVCache[] targetCache = target.newCache();
+        KVCache[] draftCache = draft.newCache();
+        int length = prompt.length;
+
+        // Invariant: both caches hold a prefix of sequence[0, length - 1); the newest token is never cached yet
+        while (length < total) {
+            int k = Math.min(lookahead, total - length);
+
+            // Draft k tokens autoregressively
+            int draftCached = draftCache[0].length();
+            for (int i = 0; i < k; i++) {
+                Matrix out = draft.forward(sequence, draftCached, length + i, draftCache);
+                draftCached = length + i;
+                GPTModel.probabilities(out.getData()[out.getRows() - 1], temperature, draftProbs[i]);
+                sequence[length + i] = GPTModel.sample(draftProbs[i], random);
+            }
+
+            // Score the newest token and all k drafts in one target forward
+            int targetCached = targetCache[0].length();
+            Matrix out = target.forward(sequence, targetCached, length + k, targetCache);
+            targetForwards++;
+            int firstRow = out.getRows() - (k + 1);
+            for (int i = 0; i <= k; i++) {
+                GPTModel.probabilities(out.getData()[firstRow + i], temperature, targetProbs[i]);
+            }
+
+            int accepted = 0;
+            int next = -1;
+            while (accepted < k) {
+                int token = sequence[length + accepted];
+                double p = targetProbs[accepted][token];
+                double q = draftProbs[accepted][token];
+                if (random.nextDouble() * q < p) {
+                    accepted++;
+                } else {
+                    next = sampleResidual(targetProbs[accepted], draftProbs[accepted]);
+                    break;
+                }
+            }
+            proposedTokens += k;
+            acceptedTokens += accepted;
+            emittedTokens += accepted;
+
+            length += accepted;
+            if (length == total) {
+                break;
+            }
+            if (next < 0) {
+                next = GPTModel.sample(targetProbs[k], random);
+            }
+            sequence[length++] = next;
+            emittedTokens++;
+            int keep = length - 1;
+            GPTModel.truncate(targetCache, Math.min(targetCache[0].length(), keep));
+            GPTModel.truncate(draftCache, Math.min(draftCache[0].length(), keep));
+        }
+        return sequence;
+    }
+
+    // Fraction of drafted tokens the target accepted
+    public double getAcceptanceRate() {
+        return proposedTokens == 0 ? 0.0 : (double) acceptedTokens / proposedTokens;
+    }
+
+    // Tokens produced per target forward pass (1.0 for plain decoding)
+    public double getTokensPerTargetForward() {
+        return targetForwards == 0 ? 0.0 : (double) emittedTokens / targetForwards;
+    }
+
+    public void resetMetrics() {
+        proposedTokens = 0;
+        acceptedTokens = 0;
+        emittedTokens = 0;
+        targetForwards = 0;
+    }
+
+    private int sampleResidual(double[] p, double[] q) {
+        double sum = 0.0;
+        for (int i = 0; i < residual.length; i++) {
+            residual[i] = Math.max(0.0, p[i] - q[i]);
+            sum += residual[i];
+        }
+        if (sum <= 0.0) {
+            return GPTModel.sample(p, random);
+        }
+        for (int i = 0; i < residual.length; i++) {
+            residual[i] /= sum;
+        }
+        return GPTModel.sample(residual, random);
+    }
+
+    // Both models are untrained, so their next-token distributions are close to uniform and the draft agrees with
+    // the target far more often than a real draft would at temperature 1. The speedups printed here are an upper
+    // bound on the mechanism, not a prediction; the greedy (temperature 0) acceptance shows how rarely the two
+    // models actually pick the same token.
+    public static void main(String[] args) {
+        int vocabSize = 512;
+        int contextLength = 256;
+        GPTModel target = new GPTModel(vocabSize, 256, contextLength, 8, 6);
+        GPTModel draft = new GPTModel(vocabSize, 64, contextLength, 4, 1);
+        int[] prompt = new int[16];
+        for (int i = 0; i < prompt.length; i++) {
+            prompt[i] = i;
+        }
+        int newTokens = 128;
+
+        target.generate(prompt, newTokens, 1.0, new Random(0)); // warm-up
+        long start = System.nanoTime();
+        target.generate(prompt, newTokens, 1.0, new Random(1));
+        double baseline = newTokens / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("autoregressive: %.1f tokens/s%n", baseline);
+
+        for (int k = 2; k <= 8; k *= 2) {
+            SpeculativeDecoder decoder = new SpeculativeDecoder(target, draft, k, 1.0, new Random(1));
+            start = System.nanoTime();
+            decoder.generate(prompt, newTokens);
+            double speculative = newTokens / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("speculative k=%d: %.1f tokens/s (%.2fx) acceptance=%.2f tokens/target-forward=%.2f%n",
+                    k, speculative, speculative / baseline, decoder.getAcceptanceRate(), decoder.getTokensPerTargetForward());
+        }
+
+        SpeculativeDecoder greedy = new SpeculativeDecoder(target, draft, 4, 0.0, new Random(1));
+        greedy.generate(prompt, newTokens);
+        System.out.printf("greedy k=4: acceptance=%.2f (untrained, near-uniform models; sampled speedups above are inflated)%n",
+                greedy.getAcceptanceRate());
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ Tensor-parallel inference for MultiHeadAttention. Heads are split into contiguous groups, one per shard, and
+ each shard owns the matching column slices of WQuery/WKey/WValue and row slice of outProj. A shard computes
+ its heads end to end and projects its slice of the combined context through its outProj rows, so the only
+ cross-thread step is summing the per-shard (numTokens, dOut) partial outputs.
+
+ Every shard runs on its own dedicated thread, and that thread allocates and copies the shard's weights and
+ buffers itself. With first-touch page placement (Linux default, and -XX:+UseNUMA for the Java heap) the shard's
+ memory lands on the socket the thread runs on; pin the JVM with numactl/taskset to control which cores those are.
+*/
+public class TensorParallelAttention implements AutoCloseable {
+    private final MultiHeadAttention attention;
+    private final Shard[] shards;
+    private final ExecutorService[] workers;
+    private Matrix output;
+
+    public TensorParallelAttention(MultiHeadAttention attention, int numShards) {
+        int numHeads = attention.getNumHeads();
+        if (numShards < 1 || numShards > numHeads) {
+            throw new IllegalArgumentException("numShards must be between 1 and num_heads");
+        }
+        this.attention = attention;
+        this.shards = new Shard[numShards];
+        this.workers = new ExecutorService[numShards];
+        int firstHead = 0;
+        for (int s = 0; s < numShards; s++) {
+            int heads = numHeads / numShards + (s < numHeads % numShards ? 1 : 0);
+            shards[s] = new Shard(firstHead, heads);
+            firstHead += heads;
+            final int index = s;
+            workers[s] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "attention-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        reloadWeights();
+    }
+
+    // Re-copies the weight slices from the wrapped layer, on each shard's own thread
+    public void reloadWeights() {
+        List<Future<?>> pending = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            final Shard shard = shards[s];
+            pending.add(workers[s].submit(() -> shard.loadWeights(attention)));
+        }
+        await(pending);
+    }
+
+    // Same result as attention.forward(input) in eval mode; the returned matrix is reused by the next call
+    public Matrix forward(Matrix input) {
+        if (input.getCols() != attention.getDIn()) {
+            throw new IllegalArgumentException("Input width must equal d_in.");
+        }
+        if (input.getRows() > attention.getMask().getRows()) {
+            throw new IllegalArgumentException("Input is longer than the context length.");
+        }
+        List<Future<?>> pending = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            final Shard shard = shards[s];
+            pending.add(workers[s].submit(() -> shard.forward(input, attention.getMask())));
+        }
+        await(pending);
+
+        // Reduce the partial projections
+        output = Matrix.reuse(output, input.getRows(), attention.getDOut());
+        output.copyFrom(shards[0].partial);
+        double[][] out = output.getData();
+        for (int s = 1; s < shards.length; s++) {
+            double[][] partial = shards[s].partial.getData();
+            for (int i = 0; i < out.length; i++) {
+                for (int j = 0; j < out[i].length; j++) {
+                    out[i][j] += partial[i][j];
+                }
+            }
+        }
+        return output;
+    }
+
+    public void close() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    private static void await(List<Future<?>> pending) {
+        try {
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for attention shards", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Attention shard failed", e.getCause());
+        }
+    }
+
+    // Heads [firstHead, firstHead + numHeads) and everything they need; only touched by the shard's thread
+    private static class Shard {
+        private final int firstHead;
+        private final int numHeads;
+        private Matrix wQuery;
+        private Matrix wKey;
+        private Matrix wValue;
+        private Matrix outProj;
+        private Matrix queries;
+        private Matrix keys;
+        private Matrix values;
+        private Matrix context;
+        private Matrix partial;
+        private double[] scoreRow = new double[0];
+        private double[] rowLogSumExp = new double[0];
+
+        Shard(int firstHead, int numHeads) {
+            this.firstHead = firstHead;
+            this.numHeads = numHeads;
+        }
+
+        void loadWeights(MultiHeadAttention attention) {
+            int headDim = attention.getHeadDim();
+            int width = numHeads * headDim;
+            int from = firstHead * headDim;
+            wQuery = columnSlice(attention.getWQuery(), from, width);
+            wKey = columnSlice(attention.getWKey(), from, width);
+            wValue = columnSlice(attention.getWValue(), from, width);
+            outProj = new Matrix(width, attention.getDOut());
+            for (int r = 0; r < width; r++) {
+                System.arraycopy(attention.getOutProj().getData()[from + r], 0, outProj.getData()[r], 0, attention.getDOut());
+            }
+        }
+
+        void forward(Matrix input, Matrix mask) {
+            int numTokens = input.getRows();
+            int width = wQuery.getCols();
+            int headDim = width / numHeads;
+            queries = Matrix.reuse(queries, numTokens, width);
+            keys = Matrix.reuse(keys, numTokens, width);
+            values = Matrix.reuse(values, numTokens, width);
+            context = Matrix.reuse(context, numTokens, width);
+            partial = Matrix.reuse(partial, numTokens, outProj.getCols());
+            if (scoreRow.length != numTokens) {
+                scoreRow = new double[numTokens];
+                rowLogSumExp = new double[numTokens];
+            }
+
+            Matrix.matmul(input, wKey, keys, false);
+            Matrix.matmul(input, wQuery, queries, false);
+            Matrix.matmul(input, wValue, values, false);
+            KVCache kv = new ArrayKVCache(keys.getData(), values.getData());
+            for (int h = 0; h < numHeads; h++) {
+                MultiHeadAttention.attendHead(queries.getData(), kv, context.getData(), mask.getData(),
+                        h * headDim, headDim, 0, numTokens, scoreRow, rowLogSumExp, 0.0, 0L, h);
+            }
+            Matrix.matmul(context, outProj, partial, false);
+        }
+
+        private static Matrix columnSlice(Matrix m, int from, int width) {
+            Matrix slice = new Matrix(m.getRows(), width);
+            for (int r = 0; r < m.getRows(); r++) {
+                System.arraycopy(m.getData()[r], from, slice.getData()[r], 0, width);
+            }
+            return slice;
+        }
+    }
+
+    public static void main(String[] args) {
+        // Single-request latency: one sequence through one attention layer, 1..N shards
+        int numTokens = 256;
+        int embDim = 512;
+        int numHeads = 16;
+        int iterations = 10;
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        MultiHeadAttention attention = new MultiHeadAttention(embDim, embDim, numTokens, 0.0, numHeads);
+        attention.setTraining(false);
+        Matrix input = Matrix.random(numTokens, embDim, 0, 1);
+        Matrix reference = new Matrix(numTokens, embDim);
+        reference.copyFrom(attention.forward(input));
+
+        // Powers of two, and always the largest usable shard count itself
+        int largest = Math.min(maxShards, numHeads);
+        List<Integer> shardCounts = new ArrayList<>();
+        for (int shards = 1; shards < largest; shards *= 2) {
+            shardCounts.add(shards);
+        }
+        shardCounts.add(largest);
+
+        for (int shards : shardCounts) {
+            try (TensorParallelAttention parallel = new TensorParallelAttention(attention, shards)) {
+                Matrix output = parallel.forward(input); // warm-up
+                double maxError = 0.0;
+                for (int i = 0; i < numTokens; i++) {
+                    for (int j = 0; j < embDim; j++) {
+                        maxError = Math.max(maxError, Math.abs(output.getData()[i][j] - reference.getData()[i][j]));
+                    }
+                }
+                long start = System.nanoTime();
+                for (int it = 0; it < iterations; it++) {
+                    parallel.forward(input);
+                }
+                double millis = (System.nanoTime() - start) / 1e6 / iterations;
+                System.out.printf("shards=%d latency=%.2fms maxError=%.2e%n", shards, millis, maxError);
+            }
+        }
+    }
+}
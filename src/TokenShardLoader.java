@@ -0,0 +1,194 @@
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ Serves random training windows from shards written by TokenShardWriter. Shards are memory-mapped read-only, and
+ background threads fill batches ahead of the consumer. Batches come from a small pool: hand them back with
+ recycle() once consumed to keep the steady state allocation-free.
+*/
+public class TokenShardLoader implements Closeable {
+    private final MappedByteBuffer[] shards;
+    private final long[] shardTokens;
+    private final long[] cumulativeWindows; // windows available in shards [0, i]
+    private final int tokenBytes;
+    private final int batchSize;
+    private final int contextLength;
+    private final BlockingQueue<Batch> ready;
+    private final BlockingQueue<Batch> free;
+    private final List<Thread> prefetchers = new ArrayList<>();
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    // One training batch: targets are the inputs shifted left by one token
+    public static class Batch {
+        public final int[][] inputs;
+        public final int[][] targets;
+
+        Batch(int batchSize, int contextLength) {
+            this.inputs = new int[batchSize][contextLength];
+            this.targets = new int[batchSize][contextLength];
+        }
+    }
+
+    public TokenShardLoader(Path directory, String prefix, int batchSize, int contextLength,
+                            int prefetchThreads, int prefetchDepth, long seed) throws IOException {
+        this.batchSize = batchSize;
+        this.contextLength = contextLength;
+
+        List<MappedByteBuffer> mapped = new ArrayList<>();
+        int width = 0;
+        for (int i = 0; Files.exists(TokenShardWriter.shardPath(directory, prefix, i)); i++) {
+            Path path = TokenShardWriter.shardPath(directory, prefix, i);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (channel.size() < TokenShardWriter.HEADER_BYTES || buffer.getInt(0) != TokenShardWriter.MAGIC
+                        || buffer.getInt(4) != TokenShardWriter.VERSION) {
+                    throw new IOException("Not a token shard: " + path);
+                }
+                int shardWidth = buffer.getInt(8);
+                if (shardWidth != 2 && shardWidth != 4) {
+                    throw new IOException("Token width must be 2 or 4 bytes, found " + shardWidth + ": " + path);
+                }
+                // Reject truncated or corrupt shards here rather than as an IndexOutOfBoundsException in a prefetch thread
+                long count = buffer.getLong(12);
+                if (count < 0 || count > (channel.size() - TokenShardWriter.HEADER_BYTES) / shardWidth) {
+                    throw new IOException("Header claims " + count + " tokens but the file holds fewer: " + path);
+                }
+                if (width != 0 && shardWidth != width) {
+                    throw new IOException("Shards mix token widths.");
+                }
+                width = shardWidth;
+                mapped.add(buffer);
+            }
+        }
+        if (mapped.isEmpty()) {
+            throw new FileNotFoundException("No shards named " + prefix + "_*.bin in " + directory);
+        }
+        this.tokenBytes = width;
+        this.shards = mapped.toArray(new MappedByteBuffer[0]);
+        this.shardTokens = new long[shards.length];
+        this.cumulativeWindows = new long[shards.length];
+        long windows = 0;
+        for (int i = 0; i < shards.length; i++) {
+            shardTokens[i] = shards[i].getLong(12);
+            windows += Math.max(0, shardTokens[i] - contextLength);
+            cumulativeWindows[i] = windows;
+        }
+        if (windows == 0) {
+            throw new IllegalArgumentException("No shard holds at least contextLength + 1 tokens.");
+        }
+
+        this.ready = new ArrayBlockingQueue<>(prefetchDepth);
+        this.free = new ArrayBlockingQueue<>(prefetchDepth + prefetchThreads + 1);
+        for (int t = 0; t < prefetchThreads; t++) {
+            final Random random = new Random(seed + t);
+            Thread thread = new Thread(() -> prefetch(random), "token-prefetch-" + t);
+            thread.setDaemon(true);
+            prefetchers.add(thread);
+            thread.start();
+        }
+    }
+
+    public long getTotalTokens() {
+        long total = 0;
+        for (long tokens : shardTokens) {
+            total += tokens;
+        }
+        return total;
+    }
+
+    // Blocks until a prefetched batch is available
+    public Batch next() throws InterruptedException {
+        while (true) {
+            Batch batch = ready.poll(100, TimeUnit.MILLISECONDS);
+            if (batch != null) {
+                return batch;
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Prefetch thread failed", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Loader is closed");
+            }
+        }
+    }
+
+    // Returns a consumed batch to the pool so prefetch threads can refill it
+    public void recycle(Batch batch) {
+        free.offer(batch);
+    }
+
+    // Fills batch with windows starting at uniformly random token positions
+    public void fill(Batch batch, Random random) {
+        long total = cumulativeWindows[cumulativeWindows.length - 1];
+        for (int b = 0; b < batchSize; b++) {
+            long window = (long) (random.nextDouble() * total);
+            int shard = 0;
+            while (cumulativeWindows[shard] <= window) {
+                shard++;
+            }
+            long start = window - (shard == 0 ? 0 : cumulativeWindows[shard - 1]);
+            MappedByteBuffer buffer = shards[shard];
+            int[] inputs = batch.inputs[b];
+            int[] targets = batch.targets[b];
+            int previous = token(buffer, start);
+            for (int t = 0; t < contextLength; t++) {
+                int current = token(buffer, start + t + 1);
+                inputs[t] = previous;
+                targets[t] = current;
+                previous = current;
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        for (Thread thread : prefetchers) {
+            thread.interrupt();
+        }
+    }
+
+    private int token(MappedByteBuffer buffer, long position) {
+        int offset = (int) (TokenShardWriter.HEADER_BYTES + position * tokenBytes);
+        return tokenBytes == 2 ? Short.toUnsignedInt(buffer.getShort(offset)) : buffer.getInt(offset);
+    }
+
+    private void prefetch(Random random) {
+        try {
+            while (!closed) {
+                Batch batch = free.poll();
+                if (batch == null) {
+                    batch = new Batch(batchSize, contextLength);
+                }
+                fill(batch, random);
+                ready.put(batch);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Usage: TokenShardLoader <shardDir> [batchSize] [contextLength]
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int contextLength = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        try (TokenShardLoader loader = new TokenShardLoader(Paths.get(args[0]), "train", batchSize, contextLength, 2, 16, 42)) {
+            System.out.println("Tokens: " + loader.getTotalTokens());
+            int batches = 1000;
+            long start = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                loader.recycle(loader.next());
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%.0f tokens/s%n", batches * (double) batchSize * contextLength / seconds);
+        }
+    }
+}
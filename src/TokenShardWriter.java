@@ -0,0 +1,164 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ Packs token ids into fixed-width shard files that TokenShardLoader memory-maps.
+
+ Shard layout (little-endian):
+   int   MAGIC
+   int   VERSION
+   int   bytes per token (2 = uint16 when the vocabulary fits, otherwise 4 = uint32)
+   long  number of tokens
+   ...   tokens
+*/
+public class TokenShardWriter implements Closeable {
+    public static final int MAGIC = 0x544F4B53; // "TOKS"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 20;
+    // A shard must fit in one MappedByteBuffer
+    public static final long MAX_SHARD_BYTES = Integer.MAX_VALUE;
+
+    private final Path directory;
+    private final String prefix;
+    private final int vocabSize;
+    private final int tokenBytes;
+    private final long tokensPerShard;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+    private int shardCount;
+    private long shardTokens;
+    private long totalTokens;
+
+    public TokenShardWriter(Path directory, String prefix, int vocabSize, long tokensPerShard) throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.vocabSize = vocabSize;
+        this.tokenBytes = vocabSize <= 65536 ? 2 : 4;
+        if (tokensPerShard < 1 || HEADER_BYTES + tokensPerShard * tokenBytes > MAX_SHARD_BYTES) {
+            throw new IllegalArgumentException("tokensPerShard must be positive and keep a shard under 2 GiB.");
+        }
+        this.tokensPerShard = tokensPerShard;
+        Files.createDirectories(directory);
+    }
+
+    public static Path shardPath(Path directory, String prefix, int index) {
+        return directory.resolve(String.format("%s_%05d.bin", prefix, index));
+    }
+
+    public void append(int token) throws IOException {
+        if (token < 0 || token >= vocabSize) {
+            throw new IllegalArgumentException("Token id " + token + " is outside the vocabulary [0, " + vocabSize + ").");
+        }
+        if (channel == null || shardTokens == tokensPerShard) {
+            openNextShard();
+        }
+        if (buffer.remaining() < tokenBytes) {
+            flush();
+        }
+        if (tokenBytes == 2) {
+            buffer.putShort((short) token);
+        } else {
+            buffer.putInt(token);
+        }
+        shardTokens++;
+        totalTokens++;
+    }
+
+    public void append(int[] tokens) throws IOException {
+        for (int token : tokens) {
+            append(token);
+        }
+    }
+
+    public long getTotalTokens() {
+        return totalTokens;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void close() throws IOException {
+        finishShard();
+    }
+
+    private void openNextShard() throws IOException {
+        finishShard();
+        channel = FileChannel.open(shardPath(directory, prefix, shardCount++),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        shardTokens = 0;
+        buffer.clear();
+        writeHeader(0);
+    }
+
+    private void finishShard() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        flush();
+        channel.position(0);
+        writeHeader(shardTokens);
+        flush();
+        channel.close();
+        channel = null;
+    }
+
+    private void writeHeader(long tokenCount) {
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(tokenBytes).putLong(tokenCount);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Tokenizes every document and writes them back to back, each followed by separatorToken (if >= 0)
+    public static long tokenizeCorpus(Tokenizer tokenizer, List<Path> documents, Path directory,
+                                      String prefix, long tokensPerShard, int separatorToken) throws IOException {
+        try (TokenShardWriter writer = new TokenShardWriter(directory, prefix, tokenizer.vocabSize(), tokensPerShard)) {
+            for (Path document : documents) {
+                // Stream the document so neither its text nor its ids need to fit in memory
+                try (Reader reader = Files.newBufferedReader(document, StandardCharsets.UTF_8)) {
+                    tokenizer.encode(reader, (id, start, end) -> {
+                        try {
+                            writer.append(id);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                if (separatorToken >= 0) {
+                    writer.append(separatorToken);
+                }
+            }
+            return writer.getTotalTokens();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Usage: TokenShardWriter <modelName> <modelsDir> <corpusDir> <outputDir>
+        BytePairEncoding.Encoder encoder = BytePairEncoding.getEncoder(args[0], args[1]);
+        List<Path> documents = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(args[2]), "*.txt")) {
+            for (Path document : stream) {
+                documents.add(document);
+            }
+        }
+        Collections.sort(documents);
+
+        Integer endOfText = encoder.tokenId("<|endoftext|>");
+        long tokens = tokenizeCorpus(encoder, documents, Paths.get(args[3]), "train", 100_000_000L,
+                endOfText == null ? -1 : endOfText);
+        System.out.println("Wrote " + tokens + " tokens from " + documents.size() + " documents");
+    }
+}
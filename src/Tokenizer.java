@@ -1,74 +1,139 @@
+import java.io.*;
+import java.nio.IntBuffer;
 import java.util.*;
-import java.util.regex.*;
-
-public class Tokenizer {
-    private Map<String, Integer> vocab;
-    private Map<Integer, String> reverseVocab;
-    private int unkTokenId;
-
-    public Tokenizer(Set<String> vocabulary) {
-        vocab = new HashMap<>();
-        reverseVocab = new HashMap<>();
-        int id = 0;
-
-        for (String word : vocabulary) {
-            vocab.put(word, id);
-            reverseVocab.put(id, word);
-            id++;
-        }
 
-        unkTokenId = id;
-        vocab.put("<UNK>", unkTokenId);
-        reverseVocab.put(unkTokenId, "<UNK>");
+/*
+ Common interface for every tokenizer (WordTokenizer, GPT2Tokenizer, BytePairEncoding.Encoder). Implementations
+ provide encode(String, TokenSink) and decode(int[], int, int); the int[], IntBuffer, offset, batch and streaming
+ entry points are built on those two. Implementations are not required to be thread-safe.
+*/
+public interface Tokenizer {
+    // Receives each token id with its [start, end) char offsets in the encoded text
+    interface TokenSink {
+        void accept(int id, int start, int end);
     }
 
-    // Tokenize text into words with improved regex and case normalization
-    private List<String> tokenize(String text) {
-        text = text.toLowerCase();
+    // Token ids with their char offsets, collected from a TokenSink
+    class Encoding implements TokenSink {
+        private int[] ids = new int[16];
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int size;
 
-        String regex = "\\b\\w+\\b|[.,!?]";
-        Matcher matcher = Pattern.compile(regex).matcher(text);
+        public void accept(int id, int start, int end) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            ids[size] = id;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
 
-        List<String> tokens = new ArrayList<>();
-        while (matcher.find()) {
-            tokens.add(matcher.group());
+        public int size() {
+            return size;
+        }
+
+        public int[] ids() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        public int id(int index) {
+            return ids[index];
+        }
+
+        public int start(int index) {
+            return starts[index];
         }
-        return tokens;
-    }
 
-    // Convert tokens to IDs
-    public List<Integer> encode(String text) {
-        List<String> tokens = tokenize(text);
-        List<Integer> tokenIds = new ArrayList<>();
-        for (String token : tokens) {
-            tokenIds.add(vocab.getOrDefault(token, unkTokenId));
+        public int end(int index) {
+            return ends[index];
         }
-        return tokenIds;
     }
 
-    // Convert IDs back to tokens
-    public String decode(List<Integer> tokenIds) {
-        StringBuilder decodedText = new StringBuilder();
-        for (int id : tokenIds) {
-            decodedText.append(reverseVocab.getOrDefault(id, "<UNK>")).append(" ");
+    // Short identifier used to select the implementation (see Tokenizers)
+    String name();
+
+    // Upper bound (exclusive) on the ids this tokenizer produces
+    int vocabSize();
+
+    void encode(String text, TokenSink sink);
+
+    String decode(int[] ids, int from, int to);
+
+    default int[] encode(String text) {
+        return encodeWithOffsets(text).ids();
+    }
+
+    default Encoding encodeWithOffsets(String text) {
+        Encoding encoding = new Encoding();
+        encode(text, encoding);
+        return encoding;
+    }
+
+    // Puts the ids into out (throws BufferOverflowException if it fills up); returns the number written
+    default int encode(String text, IntBuffer out) {
+        int before = out.position();
+        encode(text, (id, start, end) -> out.put(id));
+        return out.position() - before;
+    }
+
+    default int[][] encodeBatch(List<String> texts) {
+        int[][] result = new int[texts.size()][];
+        for (int i = 0; i < texts.size(); i++) {
+            result[i] = encode(texts.get(i));
         }
-        return decodedText.toString().trim();
+        return result;
     }
 
-    public static void main(String[] args) {
-        // Example vocabulary
-        Set<String> vocabulary = new HashSet<>(Arrays.asList("hello", "world", "this", "is", "a", "test", "."));
+    // Encodes a character stream of any length in bounded memory. Chunks are cut right before an ASCII whitespace
+    // character that starts a new word, which no implementation merges across. Offsets are relative to the stream
+    // and are only valid for streams shorter than 2^31 chars; past that they wrap, while the ids stay correct.
+    // Unicode spaces such as U+2003 are not cut on: byte-level BPE can merge them with the preceding symbol.
+    default void encode(Reader reader, TokenSink sink) throws IOException {
+        char[] buffer = new char[1 << 16];
+        int length = 0;
+        long base = 0;
+        while (true) {
+            int read = reader.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+            int cut = length - 1;
+            while (cut > 0 && !(isAsciiWhitespace(buffer[cut - 1]) && !isAsciiWhitespace(buffer[cut]))) {
+                cut--;
+            }
+            cut--; // back onto the whitespace character
+            if (cut <= 0) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                continue;
+            }
+            encodeChunk(new String(buffer, 0, cut), base, sink);
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+            base += cut;
+        }
+        if (length > 0) {
+            encodeChunk(new String(buffer, 0, length), base, sink);
+        }
+    }
 
-        // Initialize tokenizer
-        Tokenizer tokenizer = new Tokenizer(vocabulary);
+    default String decode(int[] ids) {
+        return decode(ids, 0, ids.length);
+    }
 
-        // Example text
-        String text = "Hello, world. This is a test!";
-        List<Integer> encoded = tokenizer.encode(text);
-        System.out.println("Encoded: " + encoded);
+    // [ \t\n\x0B\f\r], the characters Java's \s matches without UNICODE_CHARACTER_CLASS
+    private static boolean isAsciiWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
 
-        // Decode back to text
-        String decoded = tokenizer.decode(encoded);
-        System.out.println("Decoded: " + decoded);
+    // Offsets are narrowed to int; see encode(Reader, TokenSink) for streams longer than Integer.MAX_VALUE chars
+    private void encodeChunk(String chunk, long base, TokenSink sink) {
+        encode(chunk, (id, start, end) -> sink.accept(id, (int) (base + start), (int) (base + end)));
     }
 }
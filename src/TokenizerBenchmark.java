@@ -0,0 +1,83 @@
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Compares Tokenizer implementations on the same corpus through the shared entry points
+public class TokenizerBenchmark {
+    // Prints tokens/s and MB/s for single, IntBuffer, batch and streaming encoding of texts
+    public static void run(Tokenizer tokenizer, List<String> texts, int iterations, PrintStream out) throws IOException {
+        long chars = 0;
+        int longest = 0;
+        for (String text : texts) {
+            chars += text.length();
+            longest = Math.max(longest, text.length());
+        }
+        String joined = String.join("\n", texts);
+        IntBuffer buffer = IntBuffer.allocate(longest * 3 + 1); // at most one token per UTF-8 byte, plus an end marker
+        long[] streamed = new long[1];
+
+        for (int round = 0; round < 2; round++) { // first round warms up the JIT and caches
+            boolean report = round == 1;
+
+            long tokens = 0;
+            long start = System.nanoTime();
+            for (int it = 0; it < iterations; it++) {
+                for (String text : texts) {
+                    tokens += tokenizer.encode(text).length;
+                }
+            }
+            if (report) {
+                print(out, tokenizer, "int[]", tokens, chars * iterations, System.nanoTime() - start);
+            }
+
+            tokens = 0;
+            start = System.nanoTime();
+            for (int it = 0; it < iterations; it++) {
+                for (String text : texts) {
+                    buffer.clear();
+                    tokens += tokenizer.encode(text, buffer);
+                }
+            }
+            if (report) {
+                print(out, tokenizer, "IntBuffer", tokens, chars * iterations, System.nanoTime() - start);
+            }
+
+            tokens = 0;
+            start = System.nanoTime();
+            for (int it = 0; it < iterations; it++) {
+                for (int[] ids : tokenizer.encodeBatch(texts)) {
+                    tokens += ids.length;
+                }
+            }
+            if (report) {
+                print(out, tokenizer, "batch", tokens, chars * iterations, System.nanoTime() - start);
+            }
+
+            streamed[0] = 0;
+            start = System.nanoTime();
+            for (int it = 0; it < iterations; it++) {
+                tokenizer.encode(new StringReader(joined), (id, from, to) -> streamed[0]++);
+            }
+            if (report) {
+                print(out, tokenizer, "stream", streamed[0], (long) joined.length() * iterations, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static void print(PrintStream out, Tokenizer tokenizer, String mode, long tokens, long chars, long nanos) {
+        double seconds = nanos / 1e9;
+        out.printf("%-12s %-10s %12.0f tokens/s %8.2f MB/s%n",
+                tokenizer.name(), mode, tokens / seconds, chars * 2 / 1e6 / seconds);
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Usage: TokenizerBenchmark <modelName> <modelsDir> <corpusFile> [tokenizer ...]
+        List<String> texts = Files.readAllLines(Paths.get(args[2]), StandardCharsets.UTF_8);
+        List<String> names = args.length > 3 ? Arrays.asList(args).subList(3, args.length) : Tokenizers.NAMES;
+        for (String name : names) {
+            run(Tokenizers.load(name, args[0], args[1]), texts, 5, System.out);
+        }
+    }
+}
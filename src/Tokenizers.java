@@ -0,0 +1,20 @@
+import java.io.IOException;
+import java.util.*;
+
+// Selects a Tokenizer implementation by name; every implementation reads modelsDir/modelName/encoder.json
+public class Tokenizers {
+    public static final List<String> NAMES = Arrays.asList("word", "gpt2-simple", "gpt2-bpe");
+
+    public static Tokenizer load(String name, String modelName, String modelsDir) throws IOException {
+        switch (name) {
+            case "word":
+                return new WordTokenizer(BytePairEncoding.loadVocabulary(modelName, modelsDir).keySet());
+            case "gpt2-simple":
+                return new GPT2Tokenizer(BytePairEncoding.loadVocabulary(modelName, modelsDir));
+            case "gpt2-bpe":
+                return BytePairEncoding.getEncoder(modelName, modelsDir);
+            default:
+                throw new IllegalArgumentException("Unknown tokenizer " + name + ", expected one of " + NAMES);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.*;
+import java.util.regex.*;
+
+public class WordTokenizer implements Tokenizer {
+    private static final Pattern WORD = Pattern.compile("\\b\\w+\\b|[.,!?]");
+
+    private Map<String, Integer> vocab;
+    private Map<Integer, String> reverseVocab;
+    private int unkTokenId;
+
+    public WordTokenizer(Set<String> vocabulary) {
+        vocab = new HashMap<>();
+        reverseVocab = new HashMap<>();
+        int id = 0;
+
+        for (String word : vocabulary) {
+            vocab.put(word, id);
+            reverseVocab.put(id, word);
+            id++;
+        }
+
+        unkTokenId = id;
+        vocab.put("<UNK>", unkTokenId);
+        reverseVocab.put(unkTokenId, "<UNK>");
+    }
+
+    public String name() {
+        return "word";
+    }
+
+    public int vocabSize() {
+        return unkTokenId + 1;
+    }
+
+    // Split into words and punctuation, case-normalized, and convert them to IDs
+    public void encode(String text, TokenSink sink) {
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find()) {
+            String token = matcher.group().toLowerCase();
+            sink.accept(vocab.getOrDefault(token, unkTokenId), matcher.start(), matcher.end());
+        }
+    }
+
+    // Convert IDs back to tokens
+    public String decode(int[] tokenIds, int from, int to) {
+        StringBuilder decodedText = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            decodedText.append(reverseVocab.getOrDefault(tokenIds[i], "<UNK>")).append(" ");
+        }
+        return decodedText.toString().trim();
+    }
+
+    public static void main(String[] args) {
+        // Example vocabulary
+        Set<String> vocabulary = new HashSet<>(Arrays.asList("hello", "world", "this", "is", "a", "test", "."));
+
+        // Initialize tokenizer
+        WordTokenizer tokenizer = new WordTokenizer(vocabulary);
+
+        // Example text
+        String text = "Hello, world. This is a test!";
+        int[] encoded = tokenizer.encode(text);
+        System.out.println("Encoded: " + Arrays.toString(encoded));
+
+        // Decode back to text
+        String decoded = tokenizer.decode(encoded);
+        System.out.println("Decoded: " + decoded);
+    }
+}